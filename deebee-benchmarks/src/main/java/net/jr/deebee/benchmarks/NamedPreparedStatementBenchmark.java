@@ -0,0 +1,65 @@
+package net.jr.deebee.benchmarks;
+
+import net.jr.deebee.util.sql.NamedPreparedStatement;
+import org.h2.Driver;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parsing of named parameters, with and without the parse cache, and creation of the underlying prepared statement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NamedPreparedStatementBenchmark {
+
+    private static final String QUERY = "insert into db_update_status(from_version, to_version, since, user, reference, comment, duration) "
+            + "values(:fromVersion, :toVersion, current_timestamp, :user, :reference, :comment, :duration)";
+
+    @Param({"true", "false"})
+    public boolean parseCache;
+
+    private Connection connection;
+
+    @Setup
+    public void setUp() throws SQLException {
+        DriverManager.registerDriver(new Driver());
+        connection = DriverManager.getConnection("jdbc:h2:mem:named");
+        connection.createStatement().execute("create table db_update_status(id integer auto_increment, from_version char(32) not null, to_version char(32) not null, since timestamp not null, user char(256), reference char(256), comment char(256), duration bigint, primary key(id))");
+        NamedPreparedStatement.clearParseCache();
+        NamedPreparedStatement.setParseCacheSize(parseCache ? 256 : 0);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        NamedPreparedStatement.setParseCacheSize(256);
+        connection.close();
+    }
+
+    @Benchmark
+    public NamedPreparedStatement create() throws SQLException {
+        NamedPreparedStatement stmt = NamedPreparedStatement.create(connection, QUERY);
+        stmt.close();
+        return stmt;
+    }
+
+    @Benchmark
+    public NamedPreparedStatement createAndBind() throws SQLException {
+        NamedPreparedStatement stmt = NamedPreparedStatement.create(connection, QUERY);
+        stmt.setString("fromVersion", "1.0.0")
+                .setString("toVersion", "1.1.0")
+                .setString("user", "bench")
+                .setString("reference", "V1.1.0.sql")
+                .setString("comment", null)
+                .setLong("duration", 12);
+        stmt.close();
+        return stmt;
+    }
+}
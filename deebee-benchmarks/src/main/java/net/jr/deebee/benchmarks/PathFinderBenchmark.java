@@ -0,0 +1,68 @@
+package net.jr.deebee.benchmarks;
+
+import com.github.zafarkhaja.semver.Version;
+import net.jr.deebee.model.UpdateGraph;
+import net.jr.deebee.util.path.AStarPathFinder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * path resolution over synthetic version graphs, see {@link Plans#chain(int)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathFinderBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int rules;
+
+    @Param({"ASTAR", "DIJKSTRA", "BIDIRECTIONAL"})
+    public AStarPathFinder.Mode mode;
+
+    private UpdateGraph graph;
+
+    private Version from;
+
+    private Version to;
+
+    @Setup
+    public void setUp() {
+        graph = Plans.chain(rules).build().getGraph();
+        from = Version.valueOf(Plans.version(0));
+        to = Version.valueOf(Plans.last(rules));
+    }
+
+    @Benchmark
+    public List<Version> find() {
+        final UpdateGraph g = graph;
+        AStarPathFinder<Version> pathFinder = new AStarPathFinder<Version>() {
+
+            @Override
+            public Iterable<Version> getNeighbors(Version n) {
+                return g.getSuccessors(n);
+            }
+
+            @Override
+            public Iterable<Version> getPredecessors(Version n) {
+                return g.getPredecessors(n);
+            }
+
+            @Override
+            public double distanceBetween(Version n1, Version n2) {
+                return g.getRule(n1, n2).getCost();
+            }
+
+            @Override
+            public double heuristicCostEstimate(Version current, Version goal) {
+                return g.minimumSteps(current, goal);
+            }
+        };
+        return pathFinder.setMode(mode).find(from, to);
+    }
+}
@@ -0,0 +1,37 @@
+package net.jr.deebee.benchmarks;
+
+import net.jr.deebee.UpdatePlanBuilder;
+import net.jr.deebee.model.UpdateGraph;
+import net.jr.deebee.model.UpdatePlan;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanBuilderBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int rules;
+
+    private UpdatePlanBuilder builder;
+
+    @Setup
+    public void setUp() {
+        builder = Plans.chain(rules);
+    }
+
+    @Benchmark
+    public UpdatePlan build() {
+        return builder.build();
+    }
+
+    @Benchmark
+    public UpdateGraph buildGraph() {
+        return builder.build().getGraph();
+    }
+}
@@ -0,0 +1,41 @@
+package net.jr.deebee.benchmarks;
+
+import net.jr.deebee.UpdatePlanBuilder;
+
+/**
+ * synthetic plans used by the benchmarks.
+ */
+final class Plans {
+
+    private Plans() {
+    }
+
+    /**
+     * @return a builder with a chain of patch versions 0.0.1, 0.0.2 ... and, every 10 versions, a shortcut rule that skips
+     * them, so that the path finder has to choose between several paths.
+     */
+    static UpdatePlanBuilder chain(int rules) {
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        int versions = Math.max(1, rules * 10 / 11);
+        String previous = UpdatePlanBuilder.INITIAL_VERSION;
+        for (int i = 1; i <= versions; i++) {
+            String version = version(i);
+            builder.fromVersion(previous).toVersion(version).action(rule -> {
+            });
+            if (i % 10 == 0) {
+                builder.fromVersion(version(i - 10)).toVersion(version).withCost(5).action(rule -> {
+                });
+            }
+            previous = version;
+        }
+        return builder;
+    }
+
+    static String version(int i) {
+        return i == 0 ? UpdatePlanBuilder.INITIAL_VERSION : "0." + (i / 1000) + "." + (i % 1000);
+    }
+
+    static String last(int rules) {
+        return version(Math.max(1, rules * 10 / 11));
+    }
+}
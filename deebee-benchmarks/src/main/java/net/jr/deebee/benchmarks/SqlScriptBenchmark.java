@@ -0,0 +1,69 @@
+package net.jr.deebee.benchmarks;
+
+import net.jr.deebee.util.sql.SqlScriptRunner;
+import net.jr.deebee.util.sql.SqlStatementReader;
+import org.h2.Driver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * splitting of a script into statements, and its execution against an in-memory H2 database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlScriptBenchmark {
+
+    @Param({"100", "10000"})
+    public int statements;
+
+    @Param({"0", "100"})
+    public int batchSize;
+
+    private String script;
+
+    private Connection connection;
+
+    @Setup
+    public void setUp() throws SQLException {
+        StringBuilder sb = new StringBuilder("create table bench(id integer, label varchar(64));\n");
+        for (int i = 0; i < statements; i++) {
+            sb.append("-- row ").append(i).append('\n');
+            sb.append("insert into bench values(").append(i).append(", 'label; ").append(i).append("');\n");
+        }
+        sb.append("drop table bench;\n");
+        script = sb.toString();
+        DriverManager.registerDriver(new Driver());
+        connection = DriverManager.getConnection("jdbc:h2:mem:script");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void split(Blackhole blackhole) throws IOException {
+        try (SqlStatementReader reader = new SqlStatementReader(new StringReader(script))) {
+            String statement;
+            while ((statement = reader.next()) != null) {
+                blackhole.consume(statement);
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] run() {
+        return new SqlScriptRunner(connection).setBatchSize(batchSize).run("bench", new StringReader(script));
+    }
+}
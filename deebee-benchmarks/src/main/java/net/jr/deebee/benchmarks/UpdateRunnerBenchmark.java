@@ -0,0 +1,37 @@
+package net.jr.deebee.benchmarks;
+
+import org.h2.Driver;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a full run, from the creation of the deebee tables to the last rule, on a fresh in-memory database each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateRunnerBenchmark {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    @Param({"10", "1000"})
+    public int rules;
+
+    @Setup
+    public void setUp() throws SQLException {
+        DriverManager.registerDriver(new Driver());
+    }
+
+    @Benchmark
+    public void run() throws SQLException {
+        String url = "jdbc:h2:mem:runner" + DATABASES.incrementAndGet();
+        Plans.chain(rules).sqlRunner(DriverManager.getConnection(url)).run();
+    }
+}
@@ -0,0 +1,74 @@
+package net.jr.deebee;
+
+import com.github.zafarkhaja.semver.Version;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * bounded LRU cache of resolved paths, keyed by (from version, target version, path finder mode, plan fingerprint).
+ */
+class PathCache {
+
+    static final int DEFAULT_SIZE = 64;
+
+    private volatile int maxSize = DEFAULT_SIZE;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    private final LinkedHashMap<String, List<Version>> entries = new LinkedHashMap<String, List<Version>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Version>> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    static String key(Version from, Version to, Object mode, String fingerprint) {
+        return from + ">" + to + "|" + mode + "|" + fingerprint;
+    }
+
+    /**
+     * @param resolver finds the path when it is not cached, returns null when there is none (which is not cached).
+     */
+    List<Version> get(String key, Supplier<List<Version>> resolver) {
+        List<Version> path;
+        synchronized (this) {
+            path = entries.get(key);
+        }
+        if (path != null) {
+            hits.incrementAndGet();
+            return path;
+        }
+        misses.incrementAndGet();
+        path = resolver.get();
+        if (path != null && maxSize > 0) {
+            path = Collections.unmodifiableList(path);
+            synchronized (this) {
+                entries.put(key, path);
+            }
+        }
+        return path;
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        Iterator<String> it = entries.keySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+}
@@ -2,30 +2,30 @@ package net.jr.deebee;
 
 import com.github.zafarkhaja.semver.Version;
 import net.jr.deebee.dao.Dao;
-import net.jr.deebee.dao.H2Dao;
+import net.jr.deebee.dao.DaoDialect;
+import net.jr.deebee.dao.Daos;
 import net.jr.deebee.model.DbUpdateStatus;
+import net.jr.deebee.model.RuleAction;
 import net.jr.deebee.model.UpdatePlan;
 import net.jr.deebee.model.UpdateRule;
+import net.jr.deebee.scripts.Script;
+import net.jr.deebee.scripts.ScriptDiscovery;
 import net.jr.deebee.util.sql.SqlScriptRunner;
 import org.jdeferred.Deferred;
 import org.jdeferred.DoneCallback;
 import org.jdeferred.Promise;
-import org.jdeferred.impl.DeferredObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.nio.file.Files;
+import java.net.URL;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class UpdatePlanBuilder {
 
@@ -39,6 +39,14 @@ public class UpdatePlanBuilder {
 
         private Deferred<UpdateRule, ?, ?> action;
 
+        private Double cost;
+
+        private String parallelGroup;
+
+        private URL script;
+
+        private String scriptHash;
+
         public UpdateRuleBuilder fromVersion(String version) {
             dbUpdateStatus.setFromVersion(version);
             return this;
@@ -59,9 +67,50 @@ public class UpdatePlanBuilder {
             return this;
         }
 
-        public Promise<UpdateRule, ?, ?> action(DoneCallback<UpdateRule> callback) {
-            this.action = new DeferredObject<>();
-            return this.action.then(callback);
+        /**
+         * @param cost estimated duration of the rule, in seconds, finite and positive or zero. The runner picks the path of
+         *             least total cost.
+         */
+        public UpdateRuleBuilder withCost(double cost) {
+            if (!(cost >= 0) || Double.isInfinite(cost)) {
+                throw new IllegalArgumentException("invalid cost : " + cost);
+            }
+            this.cost = cost;
+            return this;
+        }
+
+        /**
+         * Declares that this rule does not depend on the other rules of the same group (for example index creations on
+         * different tables), so that consecutive rules of the group can be executed concurrently, each on its own
+         * connection from the configured {@link DataSource}.
+         */
+        public UpdateRuleBuilder parallelGroup(String group) {
+            this.parallelGroup = group;
+            return this;
+        }
+
+        /**
+         * the sql script run by the action of the rule, reported by {@link UpdateRunner#plan(String)}.
+         */
+        public UpdateRuleBuilder withScript(URL script) {
+            this.script = script;
+            return this;
+        }
+
+        /**
+         * @param hash the SHA-256 of the script when it is already known, for example from its index, so that
+         *             {@link UpdateRunner#verify()} does not hash it again
+         */
+        public UpdateRuleBuilder withScript(URL script, String hash) {
+            this.script = script;
+            this.scriptHash = hash;
+            return this;
+        }
+
+        public Promise<UpdateRule, Throwable, Void> action(DoneCallback<UpdateRule> callback) {
+            RuleAction ruleAction = new RuleAction();
+            this.action = ruleAction;
+            return ruleAction.then(callback);
         }
 
     }
@@ -103,6 +152,10 @@ public class UpdatePlanBuilder {
             rule.setAction(urb.action);
             rule.setComment(urb.dbUpdateStatus.getComment());
             rule.setReference(urb.dbUpdateStatus.getReference());
+            rule.setEstimatedCost(urb.cost);
+            rule.setParallelGroup(urb.parallelGroup);
+            rule.setScript(urb.script);
+            rule.setScriptHash(urb.scriptHash);
             rule.setFromVersion(Version.valueOf(urb.dbUpdateStatus.getFromVersion()));
             rule.setTargetVersion(Version.valueOf(urb.dbUpdateStatus.getToVersion()));
             updatePlan.getRules().add(rule);
@@ -110,46 +163,66 @@ public class UpdatePlanBuilder {
         return updatePlan;
     }
 
-    private static final String namePattern = "^(.+)_to_(.+).sql$";
-
-    private static final Pattern nameRegex = Pattern.compile(namePattern);
-
+    /**
+     * creates a rule for each script of a directory, see {@link ScriptDiscovery#fromDirectory(Path)}.
+     */
     public UpdatePlanBuilder importFromSqlDir(Path scriptsDirectory) throws IOException {
+        for (Script script : ScriptDiscovery.fromDirectory(scriptsDirectory)) {
+            importScript(script, scriptsDirectory.resolve(script.getName()).toString());
+        }
+        return this;
+    }
 
-        Files.list(scriptsDirectory)
-                .filter(path -> path.endsWith(".sql") && Files.isRegularFile(path)).
-                forEach(path -> {
-
-
-                    //parse file name in order to get versions
-                    String filename = path.getFileName().toString();
-                    Matcher matcher  = nameRegex.matcher(filename);
-
-                    if(matcher.matches()) {
-
-                        //create a rule that runs the script
-                        fromVersion(matcher.group(1))
-                                .toVersion(matcher.group(2))
-                                .withReference(path.toString())
-                                .action( rule -> {
-                                    try {
-                                        Callable<Connection> connectionProvider = rule.getPlan().getConfig().get(UpdatePlanConfig.CONNECTION_PROVIDER);
-                                        Connection conn = connectionProvider.call();
-                                        Reader reader = new InputStreamReader(path.toUri().toURL().openStream());
-                                        new SqlScriptRunner(conn).run(filename, reader);
-                                    } catch(Exception e) {
-                                        LoggerFactory.getLogger(SqlScriptRunner.class).error("script execution failure", e);
-                                        //TODO crash the party
-                                    }
-                                });
-
-                    } else {
-                        LOGGER.warn("invalid sql filename (expected pattern : \""+namePattern+"\") : " + filename);
-                    }
-                });
+    /**
+     * creates a rule for each script of a classpath location such as "db/migrations", see
+     * {@link ScriptDiscovery#fromClasspath(String, ClassLoader)}.
+     */
+    public UpdatePlanBuilder importFromClasspath(String location) throws IOException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = UpdatePlanBuilder.class.getClassLoader();
+        }
+        for (Script script : ScriptDiscovery.fromClasspath(location, classLoader)) {
+            importScript(script, location + "/" + script.getName());
+        }
+        return this;
+    }
 
+    public UpdatePlanBuilder importFromJar(Path jarFile, String location) throws IOException {
+        for (Script script : ScriptDiscovery.fromJar(jarFile, location)) {
+            importScript(script, location + "/" + script.getName());
+        }
         return this;
     }
+
+    private void importScript(Script script, String reference) {
+        //create a rule that runs the script, which is only opened then
+        UpdateRuleBuilder ruleBuilder = fromVersion(script.getFromVersion())
+                .toVersion(script.getToVersion())
+                .withReference(reference)
+                .withScript(script.getUrl(), script.getHash());
+        if (script.isBaseline()) {
+            ruleBuilder.withCost(UpdateRule.BASELINE_COST).withComment("baseline");
+        }
+        ruleBuilder.action( rule -> {
+            try (Reader reader = SqlScriptRunner.open(rule.getScript())) {
+                UpdatePlanConfig config = rule.getPlan().getConfig();
+                Connection conn = config.getConnection();
+                Integer batchSize = config.get(UpdatePlanConfig.SQL_BATCH_SIZE);
+                new SqlScriptRunner(conn)
+                        .setBatchSize(batchSize == null ? 0 : batchSize)
+                        .setBackslashEscapes(Boolean.TRUE.equals(config.get(UpdatePlanConfig.SQL_BACKSLASH_ESCAPES)))
+                        .setNestedComments(Boolean.TRUE.equals(config.get(UpdatePlanConfig.SQL_NESTED_COMMENTS)))
+                        .setMetrics(config.getMetrics())
+                        .run(script.getName(), reader);
+            } catch(RuntimeException e) {
+                throw e;
+            } catch(Exception e) {
+                throw new UpdateFailureException(e);
+            }
+        });
+    }
+
     public UpdateRunner sqlRunner(Connection connection) {
         config().setConnection(connection);
         return sqlRunner();
@@ -170,7 +243,20 @@ public class UpdatePlanBuilder {
         Callable<Connection> provider = updatePlan.getConfig().get(UpdatePlanConfig.CONNECTION_PROVIDER);
         final Dao dao;
         try {
-            dao = new H2Dao(provider.call());
+            DataSource dataSource = updatePlan.getConfig().get(UpdatePlanConfig.DATA_SOURCE);
+            //the lock needs connections of its own, which a single connection cannot provide
+            Callable<Connection> lockConnectionProvider = null;
+            if (dataSource != null) {
+                lockConnectionProvider = dataSource::getConnection;
+            } else if (updatePlan.getConfig().get("connection") == null) {
+                lockConnectionProvider = provider;
+            }
+            Connection connection = provider.call();
+            DaoDialect dialect = updatePlan.getConfig().get(UpdatePlanConfig.DIALECT);
+            if (dialect == null) {
+                dialect = Daos.detect(connection);
+            }
+            dao = dialect.create(connection, lockConnectionProvider);
         } catch(Exception e) {
             throw new RuntimeException(e);
         }
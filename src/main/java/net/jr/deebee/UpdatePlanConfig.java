@@ -1,10 +1,19 @@
 package net.jr.deebee;
 
+import net.jr.deebee.dao.DaoDialect;
+import net.jr.deebee.dao.LogSink;
+import net.jr.deebee.metrics.InMemoryMetrics;
+import net.jr.deebee.metrics.MetricsRecorder;
+import net.jr.deebee.scripts.ChecksumCache;
+import net.jr.deebee.util.path.AStarPathFinder;
+
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 public class UpdatePlanConfig {
 
@@ -12,8 +21,52 @@ public class UpdatePlanConfig {
 
     public static final String USER = "user";
 
+    public static final String DATA_SOURCE = "dataSource";
+
+    public static final String SQL_BATCH_SIZE = "sqlBatchSize";
+
+    public static final String SQL_BACKSLASH_ESCAPES = "sqlBackslashEscapes";
+
+    public static final String SQL_NESTED_COMMENTS = "sqlNestedComments";
+
+    public static final String PATH_FINDER_MODE = "pathFinderMode";
+
+    public static final String LOG_FLUSH_POLICY = "logFlushPolicy";
+
+    public static final String LOG_BUFFER_SIZE = "logBufferSize";
+
+    public static final String LOG_FLUSH_INTERVAL = "logFlushInterval";
+
+    public static final String PARALLEL_EXECUTOR = "parallelExecutor";
+
+    public static final String PARALLELISM = "parallelism";
+
+    public static final String ACTION_EXECUTOR = "actionExecutor";
+
+    public static final String METRICS = "metrics";
+
+    public static final String UP_TO_DATE_TTL = "upToDateTtl";
+
+    public static final String DIALECT = "dialect";
+
+    public static final String TRANSACTION_MODE = "transactionMode";
+
+    public static final String TRANSACTION_SIZE = "transactionSize";
+
+    public static final String CHECKSUM_CACHE = "checksumCache";
+
+    public static final String VERIFY_CHECKSUMS = "verifyChecksums";
+
+    public static final String LOCK_LEASE = "lockLease";
+
+    public static final String LOCK_POLL_INTERVAL = "lockPollInterval";
+
+    public static final String LOCK_TIMEOUT = "lockTimeout";
+
     private Map<String, Object> config = new TreeMap<>();
 
+    private final ThreadLocal<Connection> boundConnection = new ThreadLocal<>();
+
     public <T> T get(String key) {
         return (T) config.get(key);
     }
@@ -25,18 +78,209 @@ public class UpdatePlanConfig {
 
     public UpdatePlanConfig setConnectionProvider(Callable<Connection> connectionProvider) {
         set(CONNECTION_PROVIDER, connectionProvider);
+        config.remove("connection");
         return this;
     }
 
     public UpdatePlanConfig setDataSource(DataSource dataSource) {
-        set("dataSource", dataSource);
+        set(DATA_SOURCE, dataSource);
         setConnectionProvider(() -> dataSource.getConnection());
         return this;
     }
 
     public UpdatePlanConfig setConnection(Connection connection) {
-        set("connection", connection);
         setConnectionProvider(() -> connection);
+        set("connection", connection);
+        return this;
+    }
+
+    /**
+     * @return the connection a rule action must use : the one the runner executes the current rule on, or a connection
+     * from the connection provider when called outside of a rule.
+     */
+    public Connection getConnection() throws Exception {
+        Connection connection = boundConnection.get();
+        if (connection != null) {
+            return connection;
+        }
+        Callable<Connection> connectionProvider = get(CONNECTION_PROVIDER);
+        return connectionProvider.call();
+    }
+
+    Connection getBoundConnection() {
+        return boundConnection.get();
+    }
+
+    void bindConnection(Connection connection) {
+        boundConnection.set(connection);
+    }
+
+    void unbindConnection() {
+        boundConnection.remove();
+    }
+
+    /**
+     * Dialect of the database, detected from the metadata of the connection when none is set.
+     */
+    public UpdatePlanConfig setDialect(DaoDialect dialect) {
+        set(DIALECT, dialect);
+        return this;
+    }
+
+    public UpdatePlanConfig setSqlBatchSize(int sqlBatchSize) {
+        set(SQL_BATCH_SIZE, sqlBatchSize);
+        return this;
+    }
+
+    /**
+     * Makes imported scripts treat a backslash in a quoted string as an escape, as MySQL does by default.
+     */
+    public UpdatePlanConfig setSqlBackslashEscapes(boolean backslashEscapes) {
+        set(SQL_BACKSLASH_ESCAPES, backslashEscapes);
+        return this;
+    }
+
+    /**
+     * Makes imported scripts nest block comments, as PostgreSQL does.
+     */
+    public UpdatePlanConfig setSqlNestedComments(boolean nestedComments) {
+        set(SQL_NESTED_COMMENTS, nestedComments);
+        return this;
+    }
+
+    public UpdatePlanConfig setPathFinderMode(AStarPathFinder.Mode pathFinderMode) {
+        set(PATH_FINDER_MODE, pathFinderMode);
+        return this;
+    }
+
+    /**
+     * @param policy when buffered log entries are written, {@link LogSink.FlushPolicy#IMMEDIATE} by default
+     * @param bufferSize maximum number of buffered entries, the buffer is flushed when it is full
+     * @param flushIntervalMillis only used by {@link LogSink.FlushPolicy#INTERVAL}
+     */
+    public UpdatePlanConfig setLogFlushPolicy(LogSink.FlushPolicy policy, int bufferSize, long flushIntervalMillis) {
+        set(LOG_FLUSH_POLICY, policy);
+        set(LOG_BUFFER_SIZE, bufferSize);
+        set(LOG_FLUSH_INTERVAL, flushIntervalMillis);
+        return this;
+    }
+
+    /**
+     * @param mode how the rules of a run are grouped in transactions, {@link UpdateRunner.TransactionMode#PLAN} by default.
+     *             {@link UpdateRunner.TransactionMode#PER_N_RULES} needs a size, see
+     *             {@link #setTransactionMode(UpdateRunner.TransactionMode, int)}.
+     */
+    public UpdatePlanConfig setTransactionMode(UpdateRunner.TransactionMode mode) {
+        if (mode == UpdateRunner.TransactionMode.PER_N_RULES) {
+            throw new IllegalArgumentException("PER_N_RULES needs the number of rules per transaction");
+        }
+        set(TRANSACTION_MODE, mode);
+        return this;
+    }
+
+    /**
+     * @param rulesPerTransaction only used by {@link UpdateRunner.TransactionMode#PER_N_RULES}
+     */
+    public UpdatePlanConfig setTransactionMode(UpdateRunner.TransactionMode mode, int rulesPerTransaction) {
+        if (rulesPerTransaction < 1) {
+            throw new IllegalArgumentException("rulesPerTransaction");
+        }
+        set(TRANSACTION_MODE, mode);
+        set(TRANSACTION_SIZE, rulesPerTransaction);
+        return this;
+    }
+
+    /**
+     * Executor used to run the rules of a parallel group, when none is set a pool of {@link #PARALLELISM} threads is
+     * created for each group.
+     */
+    public UpdatePlanConfig setParallelExecutor(ExecutorService executor) {
+        set(PARALLEL_EXECUTOR, executor);
+        return this;
+    }
+
+    public UpdatePlanConfig setParallelism(int parallelism) {
+        set(PARALLELISM, parallelism);
+        return this;
+    }
+
+    /**
+     * Executor the callbacks of rule actions run on, see {@link net.jr.deebee.util.concurrent.ActionExecutors#newDefault(int)}.
+     * The runner waits for all the callbacks of a rule before going on. When none is set, callbacks run on the runner
+     * thread.
+     */
+    public UpdatePlanConfig setActionExecutor(Executor executor) {
+        set(ACTION_EXECUTOR, executor);
+        return this;
+    }
+
+    /**
+     * Recorder of the timings of rules, scripts and statements. When none is set, an {@link InMemoryMetrics} is created
+     * on first use.
+     */
+    public UpdatePlanConfig setMetrics(MetricsRecorder metrics) {
+        set(METRICS, metrics);
+        return this;
+    }
+
+    public synchronized MetricsRecorder getMetrics() {
+        MetricsRecorder metrics = get(METRICS);
+        if (metrics == null) {
+            metrics = new InMemoryMetrics();
+            set(METRICS, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * How long the version read by the "already up to date" check is trusted, per {@link DataSource}. 0 (the default)
+     * reads it on every run.
+     */
+    public UpdatePlanConfig setUpToDateTtl(long millis) {
+        set(UP_TO_DATE_TTL, millis);
+        return this;
+    }
+
+    /**
+     * Cache of the checksums of the scripts, see {@link ChecksumCache#ChecksumCache(java.nio.file.Path)} to keep it
+     * between restarts. When none is set, a cache held in memory is created on first use.
+     */
+    public UpdatePlanConfig setChecksumCache(ChecksumCache checksumCache) {
+        set(CHECKSUM_CACHE, checksumCache);
+        return this;
+    }
+
+    public synchronized ChecksumCache getChecksumCache() {
+        ChecksumCache checksumCache = get(CHECKSUM_CACHE);
+        if (checksumCache == null) {
+            checksumCache = new ChecksumCache();
+            set(CHECKSUM_CACHE, checksumCache);
+        }
+        return checksumCache;
+    }
+
+    /**
+     * Makes runs fail before doing anything when the script of an applied rule has changed since, see
+     * {@link UpdateRunner#verify()}.
+     */
+    public UpdatePlanConfig setVerifyChecksums(boolean verifyChecksums) {
+        set(VERIFY_CHECKSUMS, verifyChecksums);
+        return this;
+    }
+
+    /**
+     * Makes runs take the migration lock of the database, so that only one instance updates it at a time. The others
+     * poll the lock every pollIntervalMillis, and return as soon as the database is up to date.
+     *
+     * @param leaseMillis   how long the lock is held without being renewed. It is renewed every third of the lease
+     *                      while the update runs, on connections of its own : runs fail when they can only use a single
+     *                      connection, a {@link DataSource} or a connection provider is needed.
+     * @param timeoutMillis how long to wait for the lock before failing
+     */
+    public UpdatePlanConfig setMigrationLock(long leaseMillis, long pollIntervalMillis, long timeoutMillis) {
+        set(LOCK_LEASE, leaseMillis);
+        set(LOCK_POLL_INTERVAL, pollIntervalMillis);
+        set(LOCK_TIMEOUT, timeoutMillis);
         return this;
     }
 
@@ -3,25 +3,93 @@ package net.jr.deebee;
 import com.github.zafarkhaja.semver.Version;
 import net.jr.deebee.util.path.AStarPathFinder;
 import net.jr.deebee.dao.Dao;
+import net.jr.deebee.dao.MigrationLock;
+import net.jr.deebee.dao.LogSink;
+import net.jr.deebee.metrics.MetricsRecorder;
+import net.jr.deebee.model.ChecksumMismatch;
 import net.jr.deebee.model.DbUpdateLog;
 import net.jr.deebee.model.DbUpdateStatus;
+import net.jr.deebee.model.ExecutionPlan;
+import net.jr.deebee.model.PlannedStep;
+import net.jr.deebee.model.UpdateGraph;
+import net.jr.deebee.model.RuleAction;
 import net.jr.deebee.model.UpdatePlan;
 import net.jr.deebee.model.UpdateRule;
+import net.jr.deebee.scripts.BaselineExporter;
+import net.jr.deebee.scripts.ChecksumVerifier;
+import org.jdeferred.Deferred;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.io.StringWriter;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class UpdateRunner implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UpdateRunner.class);
 
+    private static final PathCache pathCache = new PathCache();
+
+    /**
+     * How the rules of a run are grouped in transactions. Each transaction holds the statuses of its rules, so a failed
+     * run only rolls back the rules of its last transaction, and the next run resumes from the last committed rule.
+     * Parallel groups are always committed on their own.
+     */
+    public enum TransactionMode {
+        /**
+         * the whole run is a single transaction (the default)
+         */
+        PLAN,
+        /**
+         * each rule is committed as soon as it has been applied
+         */
+        PER_RULE,
+        /**
+         * rules are committed by groups of {@link UpdatePlanConfig#TRANSACTION_SIZE}
+         */
+        PER_N_RULES
+    }
+
+    /**
+     * current versions read by {@link #isUpToDate(String)}, per DataSource.
+     */
+    private static final Map<DataSource, KnownVersion> knownVersions = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static class KnownVersion {
+        private final Version version;
+        private final long expiresAt;
+
+        private KnownVersion(Version version, long expiresAt) {
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     private UpdatePlan updatePlan;
 
     private Dao dao;
 
+    private LogSink logSink;
+
+    private MetricsRecorder metrics = MetricsRecorder.NONE;
+
+    private MigrationLock lock;
+
     public UpdateRunner(UpdatePlan updatePlan, Dao dao) {
         setUpdatePlan(updatePlan);
         setDao(dao);
@@ -35,54 +103,113 @@ public class UpdateRunner implements Runnable {
         this.dao = dao;
     }
 
+    /**
+     * Sets the maximum number of resolved paths kept in the cache shared by all runners, 0 disables the cache.
+     */
+    public static void setPathCacheSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize");
+        }
+        pathCache.setMaxSize(maxSize);
+    }
+
+    public static long getPathCacheHits() {
+        return pathCache.hits.get();
+    }
+
+    public static long getPathCacheMisses() {
+        return pathCache.misses.get();
+    }
+
+    public static void clearPathCache() {
+        pathCache.clear();
+    }
+
     private List<UpdateRule> findSteps(String strFrom, String strTo) {
 
         final Version fromVersion = Version.valueOf(strFrom);
         final Version toVersion = Version.valueOf(strTo);
+        final UpdateGraph graph = updatePlan.getGraph();
+        AStarPathFinder.Mode mode = updatePlan.getConfig().get(UpdatePlanConfig.PATH_FINDER_MODE);
+
+        long start = System.nanoTime();
+        String key = PathCache.key(fromVersion, toVersion, mode, updatePlan.getFingerprint());
+        List<Version> versions = pathCache.get(key, () -> resolvePath(graph, fromVersion, toVersion, mode));
+        metrics.recordTime(MetricsRecorder.PATH_RESOLUTION, strTo, System.nanoTime() - start);
+
+        if (versions == null) {
+            throw new UpdateFailureException("path not found");
+        }
+
+        List<UpdateRule> path = new ArrayList<>(versions.size() - 1);
+        for (int i = 1; i < versions.size(); i++) {
+            path.add(graph.getRule(versions.get(i - 1), versions.get(i)));
+        }
+        return path;
+
+    }
 
-        AStarPathFinder<UpdateRule> pathFinder = new AStarPathFinder<UpdateRule>() {
+    private List<Version> resolvePath(UpdateGraph graph, Version fromVersion, Version toVersion, AStarPathFinder.Mode mode) {
+
+        final double minCost = updatePlan.getRules().stream().mapToDouble(UpdateRule::getCost).min().orElse(0.0);
+
+        AStarPathFinder<Version> pathFinder = new AStarPathFinder<Version>() {
 
             @Override
-            public Iterable<UpdateRule> getNeighbors(UpdateRule n) {
-                return () -> updatePlan
-                        .getRules()
-                        .stream()
-                        .filter(rule -> rule.getFromVersion().equals(n.getTargetVersion()))
-                        .iterator();
+            public Iterable<Version> getNeighbors(Version n) {
+                return graph.getSuccessors(n);
             }
 
             @Override
-            public boolean isGoalReached(UpdateRule current, UpdateRule goal) {
-                return current.getTargetVersion().equals(toVersion);
+            public Iterable<Version> getPredecessors(Version n) {
+                return graph.getPredecessors(n);
             }
 
-        };
-
-        List<UpdateRule> path = null;
+            @Override
+            public double distanceBetween(Version n1, Version n2) {
+                return graph.getRule(n1, n2).getCost();
+            }
 
-        Iterator<UpdateRule> startRules = updatePlan
-                .getRules()
-                .stream()
-                .filter(rule -> rule.getFromVersion().equals(fromVersion)).iterator();
+            @Override
+            public double heuristicCostEstimate(Version current, Version goal) {
+                double steps = graph.minimumSteps(current, goal);
+                //rules that cost nothing make the heuristic useless, and steps may be infinite
+                return steps == 0 || minCost == 0 ? 0 : steps * minCost;
+            }
 
-        while (path == null && startRules.hasNext()) {
-            path = pathFinder.find(startRules.next(), null);
-        }
+        };
 
-        if (path == null) {
-            throw new UpdateFailureException("path not found");
+        if (mode != null) {
+            pathFinder.setMode(mode);
         }
 
-        return path;
+        return pathFinder.find(fromVersion, toVersion);
+    }
 
+    /**
+     * rules without a declared cost get the average duration of their previous executions on this database. Only the
+     * rules it has applied are measured, so this mostly matters when a database goes through versions it has already
+     * been at (after a restore, or with parallel rules between the same versions) : rules it has never applied keep
+     * {@link UpdateRule#DEFAULT_COST}, declare costs with {@link UpdatePlanBuilder.UpdateRuleBuilder#withCost(double)}
+     * for them.
+     */
+    private void applyMeasuredCosts() throws Exception {
+        UpdateGraph graph = updatePlan.getGraph();
+        for (DbUpdateStatus measure : dao.getMeasuredDurations()) {
+            for (UpdateRule rule : graph.getRules(Version.valueOf(measure.getFromVersion()), Version.valueOf(measure.getToVersion()))) {
+                if (Objects.equals(rule.getReference(), measure.getReference())) {
+                    rule.setMeasuredCost(measure.getDuration() / 1000.0);
+                }
+            }
+        }
     }
 
     private String getLatestVersionFromRules() {
-        return updatePlan.getRules()
-                .stream()
-                .max(Comparator.comparing(rule -> rule.getTargetVersion())).get()
-                .getTargetVersion()
-                .toString();
+        Version latest = updatePlan.getGraph().getLatestVersion();
+        if (latest == null) {
+            throw new UpdateFailureException("no update rule defined");
+        }
+        return latest.toString();
     }
 
     @Override
@@ -92,7 +219,101 @@ public class UpdateRunner implements Runnable {
         run(targetVersion);
     }
 
-    public void run(String targetVersion) {
+    /**
+     * @return the rules a run to the latest version would execute, see {@link #plan(String)}
+     */
+    public ExecutionPlan plan() {
+        return plan(getLatestVersionFromRules());
+    }
+
+    /**
+     * Resolves the rules a run to targetVersion would execute, without executing them : the only access to the database
+     * is the read of the current version, after which the connection is released like at the end of a run, and
+     * resolved paths are cached.
+     * Durations measured by previous runs are only taken into account once this runner has run, so the plan of a
+     * database whose history changes the cheapest path may differ from what is eventually executed.
+     */
+    public ExecutionPlan plan(String targetVersion) {
+
+        if (updatePlan == null) {
+            throw new IllegalStateException("[updatePlan] has not been defined");
+        }
+
+        if (dao == null) {
+            throw new IllegalStateException("[dao] has not been defined");
+        }
+
+        metrics = updatePlan.getConfig().getMetrics();
+        try {
+            String currentVersion = dao.readCurrentVersion();
+            List<PlannedStep> steps = new ArrayList<>();
+            if (!Version.valueOf(currentVersion).equals(Version.valueOf(targetVersion))) {
+                for (UpdateRule rule : findSteps(currentVersion, targetVersion)) {
+                    steps.add(new PlannedStep(rule));
+                }
+            }
+            return new ExecutionPlan(currentVersion, targetVersion, steps);
+        } catch (UpdateFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UpdateFailureException(e);
+        } finally {
+            endDao();
+        }
+    }
+
+    /**
+     * Read-only check of the current version : no transaction, no table creation and no path resolution. With a
+     * {@link UpdatePlanConfig#UP_TO_DATE_TTL}, the version is memoized per DataSource.
+     *
+     * @return true if the database is at targetVersion. False if it is not, or if the version cannot be read this way.
+     */
+    public boolean isUpToDate(String targetVersion) {
+        UpdatePlanConfig config = updatePlan.getConfig();
+        DataSource dataSource = config.get(UpdatePlanConfig.DATA_SOURCE);
+        Long ttl = config.get(UpdatePlanConfig.UP_TO_DATE_TTL);
+        Version target = Version.valueOf(targetVersion);
+
+        if (dataSource != null && ttl != null && ttl > 0) {
+            KnownVersion known = knownVersions.get(dataSource);
+            if (known != null && known.expiresAt > System.currentTimeMillis() && known.version.equals(target)) {
+                return true;
+            }
+        }
+
+        Version current;
+        try {
+            current = Version.valueOf(dao.readCurrentVersion());
+        } catch (Exception e) {
+            LOGGER.debug("could not read the current version", e);
+            return false;
+        }
+        rememberVersion(current);
+        return current.equals(target);
+    }
+
+    private void rememberVersion(Version version) {
+        UpdatePlanConfig config = updatePlan.getConfig();
+        DataSource dataSource = config.get(UpdatePlanConfig.DATA_SOURCE);
+        Long ttl = config.get(UpdatePlanConfig.UP_TO_DATE_TTL);
+        if (dataSource == null || ttl == null || ttl <= 0) {
+            return;
+        }
+        if (version == null) {
+            knownVersions.remove(dataSource);
+        } else {
+            knownVersions.put(dataSource, new KnownVersion(version, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    /**
+     * Compares the checksums recorded when the rules were applied with the current content of their scripts, see
+     * {@link ChecksumVerifier}. Scripts are hashed by {@link UpdatePlanConfig#PARALLELISM} threads, through the
+     * {@link UpdatePlanConfig#getChecksumCache() checksum cache}.
+     *
+     * @return the applied rules whose script has changed or is missing from the plan, empty if there are none
+     */
+    public List<ChecksumMismatch> verify() {
 
         if (updatePlan == null) {
             throw new IllegalStateException("[updatePlan] has not been defined");
@@ -102,43 +323,157 @@ public class UpdateRunner implements Runnable {
             throw new IllegalStateException("[dao] has not been defined");
         }
 
+        UpdatePlanConfig config = updatePlan.getConfig();
+        metrics = config.getMetrics();
+        Integer parallelism = config.get(UpdatePlanConfig.PARALLELISM);
+        long start = System.nanoTime();
+        try {
+            List<ChecksumMismatch> mismatches = new ChecksumVerifier(dao, config.getChecksumCache(),
+                    parallelism == null ? Runtime.getRuntime().availableProcessors() : parallelism).verify(updatePlan.getGraph());
+            saveChecksums();
+            return mismatches;
+        } catch (Exception e) {
+            throw new UpdateFailureException(e);
+        } finally {
+            metrics.recordTime(MetricsRecorder.VERIFY, "checksums", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Squashes the rules applied to the database into a baseline written in the given directory, see
+     * {@link BaselineExporter}. Once imported with the other scripts, for example by
+     * {@link UpdatePlanBuilder#importFromSqlDir(Path)}, new databases are created by the baseline alone.
+     *
+     * @return the baseline script
+     * @throws UnsupportedOperationException when the dialect cannot export the database
+     */
+    public Path exportBaseline(Path directory) {
+
+        if (dao == null) {
+            throw new IllegalStateException("[dao] has not been defined");
+        }
+
+        try {
+            return new BaselineExporter(dao).export(directory);
+        } catch (UpdateFailureException | UnsupportedOperationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UpdateFailureException(e);
+        } finally {
+            endDao();
+        }
+    }
 
+    private void saveChecksums() {
         try {
-            dao.begin();
-            dao.ensureTablesExist();
+            updatePlan.getConfig().getChecksumCache().save();
+        } catch (IOException e) {
+            LOGGER.warn("could not save the checksum cache", e);
+        }
+    }
 
-            String currentVersion = dao.getCurrentVersionFromDb();
-            List<UpdateRule> rules = findSteps(currentVersion, targetVersion);
-            logRules(rules);
+    public void run(String targetVersion) {
+
+        if (updatePlan == null) {
+            throw new IllegalStateException("[updatePlan] has not been defined");
+        }
+
+        if (dao == null) {
+            throw new IllegalStateException("[dao] has not been defined");
+        }
 
+        if (Boolean.TRUE.equals(updatePlan.getConfig().get(UpdatePlanConfig.VERIFY_CHECKSUMS))) {
+            List<ChecksumMismatch> mismatches;
+            try {
+                mismatches = verify();
+            } catch (UpdateFailureException e) {
+                endDao();
+                throw e;
+            }
+            if (!mismatches.isEmpty()) {
+                for (ChecksumMismatch mismatch : mismatches) {
+                    LOGGER.error(mismatch.toString());
+                }
+                endDao();
+                throw new UpdateFailureException(mismatches.size() + " applied script(s) have changed or are missing, first one : " + mismatches.get(0));
+            }
+        }
 
-            for (UpdateRule rule : rules) {
+        if (isUpToDate(targetVersion)) {
+            LOGGER.info("database is already at version " + targetVersion);
+            endDao();
+            return;
+        }
 
-                //TODO add log on start
-                addLog("INFO", "Executing " + rule.toString() + " ...");
+        lock = createLock();
+        try {
+            if (lock != null && !lock.acquire(() -> isUpToDate(targetVersion))) {
+                LOGGER.info("database has been updated to version " + targetVersion + " by another instance");
+                lock = null;
+                endDao();
+                return;
+            }
+        } catch (Exception e) {
+            lock = null;
+            endDao();
+            throw e instanceof UpdateFailureException ? (UpdateFailureException) e : new UpdateFailureException(e);
+        }
 
-                //TODO execute action for the rule
-                rule.getAction().resolve(rule);
+        UpdatePlanConfig config = updatePlan.getConfig();
+        Integer logBufferSize = config.get(UpdatePlanConfig.LOG_BUFFER_SIZE);
+        Long logFlushInterval = config.get(UpdatePlanConfig.LOG_FLUSH_INTERVAL);
+        logSink = LogSink.create(dao, config.get(UpdatePlanConfig.LOG_FLUSH_POLICY),
+                logBufferSize == null ? 100 : logBufferSize,
+                logFlushInterval == null ? 1000L : logFlushInterval);
+        metrics = config.getMetrics();
 
-                //TODO update state
-                DbUpdateStatus updateStatus = new DbUpdateStatus();
-                updateStatus.setReference(rule.getReference());
-                updateStatus.setComment(rule.getComment());
-                updateStatus.setFromVersion(rule.getFromVersion().toString());
-                updateStatus.setToVersion(rule.getTargetVersion().toString());
-                updateStatus.setCurrent(true);
-                updateStatus.setSince(new Date());
-                updateStatus.setUser(updatePlan.getProperty("user"));
+        try {
+            long start = System.nanoTime();
+            dao.begin();
+            metrics.recordTime(MetricsRecorder.CONNECTION, "dao", System.nanoTime() - start);
+            dao.ensureTablesExist();
 
-                dao.insertStatus(updateStatus);
-                dao.markAsCurrent(updateStatus);
+            String currentVersion = dao.getCurrentVersionFromDb();
+            applyMeasuredCosts();
+            List<UpdateRule> rules = findSteps(currentVersion, targetVersion);
+            logRules(rules);
 
-                //TODO log on end
-                addLog("INFO", " ... done");
+            //a previous run that failed has left the database at its last committed rule, which the path starts from
+            int rulesPerTransaction = rulesPerTransaction();
+            int uncommitted = 0;
+            int i = 0;
+            while (i < rules.size()) {
+                //consecutive rules of the same parallel group form a batch of independent rules
+                String group = rules.get(i).getParallelGroup();
+                int end = i + 1;
+                while (group != null && end < rules.size() && group.equals(rules.get(end).getParallelGroup())) {
+                    end++;
+                }
+                if (end - i > 1 && canRunInParallel()) {
+                    executeInParallel(group, rules.subList(i, end));
+                    uncommitted = 0;
+                } else {
+                    for (UpdateRule rule : rules.subList(i, end)) {
+                        executeRule(rule);
+                        if (++uncommitted == rulesPerTransaction) {
+                            checkpoint(rule);
+                            uncommitted = 0;
+                        }
+                    }
+                }
+                i = end;
             }
 
             //success !
+            logSink.flush();
+            if (lock != null) {
+                lock.stopHeartbeat();
+            }
+            fence();
+            start = System.nanoTime();
             dao.commit();
+            metrics.recordTime(MetricsRecorder.COMMIT, "dao", System.nanoTime() - start);
+            rememberVersion(Version.valueOf(targetVersion));
 
         } catch (Exception e) {
 
@@ -146,15 +481,347 @@ public class UpdateRunner implements Runnable {
 
             //failure : rollback db,
             addLog("ERROR", buildMessage(e));
+            flushLogs();
+            long start = System.nanoTime();
             dao.rollback();
+            metrics.recordTime(MetricsRecorder.ROLLBACK, "dao", System.nanoTime() - start);
+            rememberVersion(null);
             throw new UpdateFailureException(e);
 
         } finally {
+            if (lock != null) {
+                lock.release();
+                lock = null;
+            }
+            saveChecksums();
+            endDao();
+        }
+    }
+
+    private int rulesPerTransaction() {
+        UpdatePlanConfig config = updatePlan.getConfig();
+        TransactionMode mode = config.get(UpdatePlanConfig.TRANSACTION_MODE);
+        if (mode == TransactionMode.PER_RULE) {
+            return 1;
+        } else if (mode == TransactionMode.PER_N_RULES) {
+            Integer size = config.get(UpdatePlanConfig.TRANSACTION_SIZE);
+            if (size == null) {
+                throw new IllegalStateException("[" + UpdatePlanConfig.TRANSACTION_SIZE + "] has not been defined");
+            }
+            return size;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * commits the rules applied since the previous commit with their statuses and logs.
+     */
+    private void checkpoint(UpdateRule last) throws Exception {
+        logSink.flush();
+        fence();
+        long start = System.nanoTime();
+        dao.checkpoint();
+        metrics.recordTime(MetricsRecorder.COMMIT, "checkpoint", System.nanoTime() - start);
+        LOGGER.info("committed up to version " + last.getTargetVersion());
+    }
+
+    private void endDao() {
+        try {
+            dao.end();
+        } catch (Exception e) {
+            LOGGER.error("dao failure", e);
+        }
+    }
+
+    /**
+     * @return the migration lock, not taken yet, or null if locking is not configured
+     */
+    private MigrationLock createLock() {
+        UpdatePlanConfig config = updatePlan.getConfig();
+        Long leaseMillis = config.get(UpdatePlanConfig.LOCK_LEASE);
+        if (leaseMillis == null) {
+            return null;
+        }
+        Long pollInterval = config.get(UpdatePlanConfig.LOCK_POLL_INTERVAL);
+        Long timeout = config.get(UpdatePlanConfig.LOCK_TIMEOUT);
+        String user = config.get(UpdatePlanConfig.USER);
+        String owner = (user == null ? "deebee" : user) + "@" + ManagementFactory.getRuntimeMXBean().getName();
+        return new MigrationLock(dao, owner, leaseMillis, pollInterval == null ? 1000 : pollInterval,
+                timeout == null ? Long.MAX_VALUE / 2 : timeout);
+    }
+
+    /**
+     * fails if the lease of the migration lock has been lost, before anything is committed.
+     */
+    private void fence() throws Exception {
+        if (lock != null) {
+            lock.fence();
+        }
+    }
+
+    private void executeRule(UpdateRule rule) throws Exception {
+
+        addLog("INFO", "Executing " + rule.toString() + " ...");
+
+        long start = System.nanoTime();
+        UpdatePlanConfig config = updatePlan.getConfig();
+        config.bindConnection(dao.getConnection());
+        try {
+            executeAction(rule);
+        } finally {
+            config.unbindConnection();
+        }
+        long nanos = System.nanoTime() - start;
+        metrics.recordTime(MetricsRecorder.RULE, metricTag(rule), nanos);
+
+        recordStatus(rule, nanos / 1000000);
+
+        addLog("INFO", " ... done");
+        logSink.stepCompleted();
+    }
+
+    /**
+     * runs the action of the rule and waits for all of its callbacks, on the configured action executor if any.
+     */
+    private void executeAction(UpdateRule rule) throws Exception {
+        Deferred<UpdateRule, ?, ?> action = rule.getAction();
+        if (action == null) {
+            return;
+        }
+        if (!(action instanceof RuleAction)) {
+            action.resolve(rule);
+            return;
+        }
+
+        UpdatePlanConfig config = updatePlan.getConfig();
+        Executor executor = config.get(UpdatePlanConfig.ACTION_EXECUTOR);
+        CompletableFuture<UpdateRule> future;
+        if (executor == null) {
+            future = ((RuleAction) action).execute(rule, Runnable::run);
+        } else {
+            //callbacks must see the connection of the rule, whatever thread they run on
+            Connection connection = config.getBoundConnection();
+            future = ((RuleAction) action).execute(rule, task -> executor.execute(() -> {
+                config.bindConnection(connection);
+                try {
+                    task.run();
+                } finally {
+                    config.unbindConnection();
+                }
+            }));
+        }
+
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void recordStatus(UpdateRule rule, long duration) throws Exception {
+        DbUpdateStatus updateStatus = newStatus(rule, duration);
+        dao.insertStatus(updateStatus);
+        dao.markAsCurrent(updateStatus);
+    }
+
+    private DbUpdateStatus newStatus(UpdateRule rule, long duration) throws IOException {
+        DbUpdateStatus updateStatus = new DbUpdateStatus();
+        updateStatus.setReference(rule.getReference());
+        updateStatus.setComment(rule.getComment());
+        updateStatus.setFromVersion(rule.getFromVersion().toString());
+        updateStatus.setToVersion(rule.getTargetVersion().toString());
+        updateStatus.setCurrent(true);
+        updateStatus.setSince(new Date());
+        updateStatus.setUser(updatePlan.getProperty("user"));
+        updateStatus.setDuration(duration);
+        if (rule.getScriptHash() != null) {
+            updateStatus.setChecksum(rule.getScriptHash());
+        } else if (rule.getScript() != null) {
+            updateStatus.setChecksum(updatePlan.getConfig().getChecksumCache().checksum(rule.getScript()));
+        }
+        return updateStatus;
+    }
+
+    private boolean canRunInParallel() {
+        if (updatePlan.getConfig().get(UpdatePlanConfig.DATA_SOURCE) == null) {
+            LOGGER.warn("parallel groups need a DataSource to get one connection per rule, running them sequentially");
+            return false;
+        }
+        return true;
+    }
+
+    private static class ParallelStep {
+        private final UpdateRule rule;
+        private final Connection connection;
+        private final DbUpdateStatus status;
+
+        private ParallelStep(UpdateRule rule, Connection connection, DbUpdateStatus status) {
+            this.rule = rule;
+            this.connection = connection;
+            this.status = status;
+        }
+    }
+
+    /**
+     * Runs independent rules concurrently, each in a transaction of its own on a connection from the DataSource.
+     * <ul>
+     * <li>the work done before the group is committed first</li>
+     * <li>each rule inserts its status in its own transaction, so that its work and its status are committed
+     * together</li>
+     * <li>the transactions of the rules are only committed once all of them have succeeded</li>
+     * <li>on the first failure the rules that have not started yet are skipped, the running ones are waited for, and
+     * every transaction of the group is rolled back</li>
+     * <li>the current version moves to the end of the group once all of its rules are committed. If committing one of
+     * them fails, the others may be committed already : the next run starts from the beginning of the group again and
+     * skips the rules that have a status after the current one</li>
+     * </ul>
+     */
+    private void executeInParallel(String group, List<UpdateRule> rules) throws Exception {
+
+        UpdatePlanConfig config = updatePlan.getConfig();
+        DataSource dataSource = config.get(UpdatePlanConfig.DATA_SOURCE);
+
+        logSink.flush();
+        fence();
+        dao.checkpoint();
+
+        //rules committed by a previous run that failed in the middle of the group
+        Map<UpdateRule, DbUpdateStatus> statuses = new HashMap<>();
+        List<DbUpdateStatus> committed = dao.getStatusesAfterCurrent();
+        for (UpdateRule rule : rules) {
+            for (DbUpdateStatus status : committed) {
+                if (rule.getFromVersion().toString().equals(status.getFromVersion())
+                        && rule.getTargetVersion().toString().equals(status.getToVersion())
+                        && Objects.equals(rule.getReference(), status.getReference())) {
+                    statuses.put(rule, status);
+                    addLog("INFO", "Skipping " + rule.toString() + ", committed by a previous run");
+                    break;
+                }
+            }
+        }
+        List<UpdateRule> pending = new ArrayList<>(rules);
+        pending.removeAll(statuses.keySet());
+        addLog("INFO", "Executing " + pending.size() + " rules of group " + group + " in parallel ...");
+
+        ExecutorService executor = config.get(UpdatePlanConfig.PARALLEL_EXECUTOR);
+        boolean ownExecutor = executor == null;
+        if (ownExecutor) {
+            Integer parallelism = config.get(UpdatePlanConfig.PARALLELISM);
+            int threads = Math.min(pending.size(), parallelism == null ? Runtime.getRuntime().availableProcessors() : parallelism);
+            executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        }
+
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        List<Future<ParallelStep>> futures = new ArrayList<>(pending.size());
+        try {
+            for (UpdateRule rule : pending) {
+                futures.add(executor.submit(() -> {
+                    if (aborted.get()) {
+                        return null;
+                    }
+                    long start = System.nanoTime();
+                    Connection connection = dataSource.getConnection();
+                    metrics.recordTime(MetricsRecorder.CONNECTION, "parallel", System.nanoTime() - start);
+                    try {
+                        connection.setAutoCommit(false);
+                        start = System.nanoTime();
+                        config.bindConnection(connection);
+                        try {
+                            executeAction(rule);
+                        } finally {
+                            config.unbindConnection();
+                        }
+                        long nanos = System.nanoTime() - start;
+                        metrics.recordTime(MetricsRecorder.RULE, metricTag(rule), nanos);
+                        DbUpdateStatus status = newStatus(rule, nanos / 1000000);
+                        dao.insertStatus(connection, status);
+                        return new ParallelStep(rule, connection, status);
+                    } catch (Exception | Error e) {
+                        aborted.set(true);
+                        closeQuietly(connection, true);
+                        throw e;
+                    }
+                }));
+            }
+        } finally {
+            if (ownExecutor) {
+                executor.shutdown();
+            }
+        }
+
+        //wait for every rule, so that no transaction is left open
+        List<ParallelStep> steps = new ArrayList<>(pending.size());
+        Exception failure = null;
+        for (Future<ParallelStep> future : futures) {
             try {
-                dao.end();
-            } catch (Exception e) {
-                LOGGER.error("dao failure", e);
+                ParallelStep step = future.get();
+                if (step != null) {
+                    steps.add(step);
+                }
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+
+        if (failure != null || steps.size() < pending.size()) {
+            long start = System.nanoTime();
+            for (ParallelStep step : steps) {
+                closeQuietly(step.connection, true);
+            }
+            metrics.recordTime(MetricsRecorder.ROLLBACK, group, System.nanoTime() - start);
+            throw failure != null ? failure : new UpdateFailureException("parallel group " + group + " was aborted");
+        }
+
+        try {
+            fence();
+            long start = System.nanoTime();
+            for (ParallelStep step : steps) {
+                step.connection.commit();
+            }
+            metrics.recordTime(MetricsRecorder.COMMIT, group, System.nanoTime() - start);
+        } finally {
+            for (ParallelStep step : steps) {
+                closeQuietly(step.connection, true);
+            }
+        }
+
+        for (ParallelStep step : steps) {
+            statuses.put(step.rule, step.status);
+            addLog("INFO", " ... done " + step.rule.toString());
+            logSink.stepCompleted();
+        }
+        dao.markAsCurrent(statuses.get(rules.get(rules.size() - 1)));
+        logSink.flush();
+        fence();
+        dao.checkpoint();
+    }
+
+    private static String metricTag(UpdateRule rule) {
+        if (rule.getReference() != null) {
+            return rule.getReference();
+        }
+        return rule.getFromVersion() + " -> " + rule.getTargetVersion();
+    }
+
+    private static void closeQuietly(Connection connection, boolean rollback) {
+        try {
+            if (rollback) {
+                connection.rollback();
             }
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.warn("could not release connection", e);
         }
     }
 
@@ -205,11 +872,19 @@ public class UpdateRunner implements Runnable {
     private void addLog(String level, String message) {
         try {
             DbUpdateLog log = DbUpdateLog.createNew(level, message);
-            dao.insertLog(log);
+            logSink.append(log);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
 
     }
 
+    private void flushLogs() {
+        try {
+            logSink.flush();
+        } catch (Exception e) {
+            LOGGER.error("could not write update logs", e);
+        }
+    }
+
 }
@@ -0,0 +1,80 @@
+package net.jr.deebee.dao;
+
+import net.jr.deebee.model.DbUpdateLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps log entries in a bounded buffer and writes them with {@link Dao#insertLogs(List)}.
+ * The buffer is flushed according to the policy, and whenever it is full. Flushes happen on the thread that appends,
+ * since the dao connection is bound to the runner thread.
+ * {@link LogSink.FlushPolicy#IMMEDIATE} does not buffer, {@link LogSink#create} inserts each entry on its own instead.
+ */
+public class BufferedLogSink implements LogSink {
+
+    private final Dao dao;
+
+    private final FlushPolicy policy;
+
+    private final int bufferSize;
+
+    private final long flushIntervalNanos;
+
+    private final List<DbUpdateLog> buffer;
+
+    private long lastFlush = System.nanoTime();
+
+    public BufferedLogSink(Dao dao, FlushPolicy policy, int bufferSize, long flushIntervalMillis) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize");
+        }
+        this.dao = dao;
+        this.policy = policy;
+        this.bufferSize = bufferSize;
+        this.flushIntervalNanos = flushIntervalMillis * 1000000L;
+        this.buffer = new ArrayList<>(bufferSize);
+    }
+
+    @Override
+    public void append(DbUpdateLog log) throws Exception {
+        buffer.add(log);
+        if (buffer.size() >= bufferSize) {
+            flush();
+        } else if (policy == FlushPolicy.INTERVAL) {
+            flushIfIntervalElapsed();
+        }
+    }
+
+    @Override
+    public void stepCompleted() throws Exception {
+        if (policy == FlushPolicy.PER_STEP) {
+            flush();
+        } else if (policy == FlushPolicy.INTERVAL) {
+            flushIfIntervalElapsed();
+        }
+    }
+
+    private void flushIfIntervalElapsed() throws Exception {
+        if (System.nanoTime() - lastFlush >= flushIntervalNanos) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws Exception {
+        lastFlush = System.nanoTime();
+        if (buffer.isEmpty()) {
+            return;
+        }
+        try {
+            dao.insertLogs(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    public int getPendingCount() {
+        return buffer.size();
+    }
+}
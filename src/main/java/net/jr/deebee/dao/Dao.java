@@ -3,20 +3,106 @@ package net.jr.deebee.dao;
 import net.jr.deebee.model.DbUpdateLog;
 import net.jr.deebee.model.DbUpdateStatus;
 
+import java.io.Writer;
+import java.sql.Connection;
+import java.util.List;
+
 public interface Dao {
 
     String getCurrentVersionFromDb() throws Exception;
 
+    /**
+     * reads the current version without a session and without creating or altering any table. When no session is
+     * begun afterwards, {@link #end()} releases the connection it used.
+     *
+     * @return the current version, or {@link net.jr.deebee.UpdatePlanBuilder#INITIAL_VERSION} when the tables do not
+     * exist yet
+     */
+    String readCurrentVersion() throws Exception;
+
+    /**
+     * reads, like {@link #readCurrentVersion()}, the statuses that have a checksum.
+     *
+     * @return their versions, reference and checksum, empty when the tables or the checksum column do not exist yet
+     */
+    List<DbUpdateStatus> readChecksums() throws Exception;
+
+    /**
+     * writes a script that recreates the schema and the data of the database, except the tables of deebee, without a
+     * session.
+     *
+     * @throws net.jr.deebee.UpdateFailureException when the database has no table besides the ones of deebee
+     * @throws UnsupportedOperationException         when the database can only be dumped with its own tools
+     */
+    void exportBaseline(Writer writer) throws Exception;
+
     void insertLog(DbUpdateLog updateLog) throws Exception;
 
+    default void insertLogs(List<DbUpdateLog> updateLogs) throws Exception {
+        for (DbUpdateLog updateLog : updateLogs) {
+            insertLog(updateLog);
+        }
+    }
+
     void insertStatus(DbUpdateStatus updateStatus) throws Exception;
 
+    /**
+     * inserts the status on the given connection instead of the session one, so that it is committed along with the
+     * work of a rule that runs in a transaction of its own.
+     */
+    void insertStatus(Connection connection, DbUpdateStatus updateStatus) throws Exception;
+
+    /**
+     * @return the statuses inserted after the current one, in order : those of the rules of a parallel group that were
+     * committed before the group failed.
+     */
+    List<DbUpdateStatus> getStatusesAfterCurrent() throws Exception;
+
+    /**
+     * @return one entry per distinct (from version, to version, reference) that has been applied before, holding the
+     * average duration of its executions.
+     */
+    List<DbUpdateStatus> getMeasuredDurations() throws Exception;
+
     void markAsCurrent(DbUpdateStatus updateStatus) throws Exception;
 
     void begin() throws Exception;
 
+    /**
+     * Tries to take the migration lock shared by all the instances that update the database, in a transaction of its
+     * own.
+     *
+     * @return the lease, or null if another owner holds a lease that has not expired
+     */
+    LockLease tryLock(String owner, long leaseMillis) throws Exception;
+
+    /**
+     * extends the lease, from a thread other than the one running the update.
+     *
+     * @return false if the lease has been lost, as it expired and the lock was taken by another owner
+     */
+    boolean renewLock(LockLease lease) throws Exception;
+
+    void unlock(LockLease lease) throws Exception;
+
+    /**
+     * locks the lock row in the current session until it ends, and fails if the lease has been lost : called before
+     * committing an update, so that an owner whose lease expired cannot commit over the work of the next owner.
+     */
+    void fence(LockLease lease) throws Exception;
+
     void ensureTablesExist() throws Exception;
 
+    /**
+     * @return the connection of the current transaction
+     */
+    Connection getConnection();
+
+    /**
+     * commits the work done so far, the following operations still run in a transaction.
+     */
+    void checkpoint() throws Exception;
+
     void commit() throws Exception;
 
     void rollback();
@@ -0,0 +1,24 @@
+package net.jr.deebee.dao;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+
+/**
+ * Creates the dao of a kind of database. Besides the built-in dialects, implementations listed in
+ * META-INF/services/net.jr.deebee.dao.DaoDialect are found by {@link Daos#create(Connection, Callable)}, and are tried
+ * first.
+ */
+public interface DaoDialect {
+
+    /**
+     * @return true if this dialect handles the database described by metaData
+     */
+    boolean supports(DatabaseMetaData metaData) throws SQLException;
+
+    /**
+     * @param lockConnectionProvider may be null, see {@link JdbcDao#JdbcDao(Connection, Callable)}
+     */
+    Dao create(Connection connection, Callable<Connection> lockConnectionProvider);
+}
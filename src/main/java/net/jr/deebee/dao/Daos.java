@@ -0,0 +1,69 @@
+package net.jr.deebee.dao;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.BiFunction;
+
+/**
+ * Picks the dao of a database from its {@link DatabaseMetaData}.
+ */
+public final class Daos {
+
+    private static final class ProductDialect implements DaoDialect {
+
+        private final String productName;
+
+        private final BiFunction<Connection, Callable<Connection>, Dao> factory;
+
+        private ProductDialect(String productName, BiFunction<Connection, Callable<Connection>, Dao> factory) {
+            this.productName = productName;
+            this.factory = factory;
+        }
+
+        @Override
+        public boolean supports(DatabaseMetaData metaData) throws SQLException {
+            String name = metaData.getDatabaseProductName();
+            return name != null && name.toLowerCase(Locale.ROOT).startsWith(productName);
+        }
+
+        @Override
+        public Dao create(Connection connection, Callable<Connection> lockConnectionProvider) {
+            return factory.apply(connection, lockConnectionProvider);
+        }
+    }
+
+    private static final List<DaoDialect> BUILT_IN = Collections.unmodifiableList(Arrays.asList(
+            new ProductDialect("postgresql", PostgresDao::new),
+            new ProductDialect("mysql", MySqlDao::new),
+            new ProductDialect("mariadb", MySqlDao::new),
+            new ProductDialect("h2", H2Dao::new)));
+
+    private Daos() {
+    }
+
+    /**
+     * @return the dialect of the database of the connection, from the service dialects first, then the built-in ones.
+     * When none matches, {@link JdbcDao}.
+     */
+    public static DaoDialect detect(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (DaoDialect dialect : ServiceLoader.load(DaoDialect.class)) {
+            if (dialect.supports(metaData)) {
+                return dialect;
+            }
+        }
+        for (DaoDialect dialect : BUILT_IN) {
+            if (dialect.supports(metaData)) {
+                return dialect;
+            }
+        }
+        return new ProductDialect("", JdbcDao::new);
+    }
+
+    public static Dao create(Connection connection, Callable<Connection> lockConnectionProvider) throws SQLException {
+        return detect(connection).create(connection, lockConnectionProvider);
+    }
+}
@@ -1,109 +1,74 @@
 package net.jr.deebee.dao;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import net.jr.deebee.UpdatePlanBuilder;
-import net.jr.deebee.model.DbUpdateLog;
-import net.jr.deebee.model.DbUpdateStatus;
-import net.jr.deebee.util.sql.NamedPreparedStatement;
-
-import java.sql.*;
-import java.util.Map;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Callable;
 
-public class H2Dao implements Dao {
-
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-
-    private Callable<Connection> connectionProvider;
-
-    private ThreadLocal<Connection> connection = new ThreadLocal<>();
-
-    private ThreadLocal<Boolean>  originalAutocommit = new ThreadLocal<>();
+/**
+ * H2 dialect. Keeps the column types of the tables created by the first versions of deebee, which are migrated in place.
+ * Baselines are exported with the SCRIPT command.
+ */
+public class H2Dao extends JdbcDao {
 
     public H2Dao(Connection connection) {
-        connectionProvider = () -> connection;
+        super(connection);
     }
 
-    @Override
-    public String getCurrentVersionFromDb() throws Exception {
-        Connection c = connection.get();
-        ResultSet rs = c.createStatement().executeQuery("select to_version from db_update_status where current <> 0");
-        if(rs.next()) {
-            return rs.getString(1);
-        } else {
-            return UpdatePlanBuilder.INITIAL_VERSION;
-        }
+    public H2Dao(Connection connection, Callable<Connection> lockConnectionProvider) {
+        super(connection, lockConnectionProvider);
     }
 
     @Override
-    public void insertLog(DbUpdateLog updateLog)  throws Exception {
-
-        NamedPreparedStatement pStmt = NamedPreparedStatement.create(connection.get(), "insert into db_update_log(level, comment, tstamp) values(:level, :comment, current_timestamp)", Statement.RETURN_GENERATED_KEYS);
-        pStmt.setParameters(objectMapper.convertValue(updateLog, Map.class));
-        pStmt.executeUpdate();
-        updateLog.setId(pStmt.getUniqueGeneratedKey());
+    protected String userColumn() {
+        return "user";
     }
 
     @Override
-    public void insertStatus(DbUpdateStatus updateStatus)  throws Exception {
-        NamedPreparedStatement pStmt = NamedPreparedStatement.create(connection.get(),"insert into db_update_status(from_version, to_version, since, user, reference, comment) values(:fromVersion, :toVersion, current_timestamp, :user, :reference, :comment)");
-        pStmt.setParameters(objectMapper.convertValue(updateStatus, Map.class));
-        pStmt.executeUpdate();
+    protected List<String> createTableQueries() {
+        return Arrays.asList(
+                "create table db_update_status(id integer auto_increment, from_version char(32) not null, to_version char(32) not null, since timestamp not null, user char(256), reference char(256), comment char(256), duration bigint, checksum char(64), primary key(id))",
+                "create table db_update_log(id integer auto_increment, level char(16) not null, comment char(1024), tstamp timestamp not null default current_timestamp, primary key(id))",
+                createCurrentTableQuery());
+    }
 
-        ResultSet rs = connection.get().createStatement().executeQuery("select max(id) from db_update_status");
-        rs.next();
-        long id = rs.getLong(1);
-        updateStatus.setId(id);
+    @Override
+    protected String createCurrentTableQuery() {
+        return "create table db_update_current(id integer not null, status_id integer not null, primary key(id))";
     }
 
     @Override
-    public void markAsCurrent(DbUpdateStatus updateStatus)  throws Exception {
-        connection.get().createStatement().executeUpdate("update db_update_status set current = 0");
-        NamedPreparedStatement
-                .create(connection.get(), "update db_update_status set current = 1 where id = :id")
-                .setLong("id", updateStatus.getId())
-                .executeUpdate();
+    protected String upsertCurrentQuery() {
+        return "merge into db_update_current(id, status_id) key(id) values(1, :id)";
     }
 
     @Override
-    public void begin()  throws Exception{
-        connection.set(connectionProvider.call());
-        originalAutocommit.set(connection.get().getAutoCommit());
-        connection.get().setAutoCommit(false);
+    protected String now() {
+        return "current_timestamp";
     }
 
     @Override
-    public void commit()  throws Exception{
-        connection.get().commit();
-        connection.get().setAutoCommit(originalAutocommit.get());
+    protected String leaseExpiry() {
+        return "dateadd('MILLISECOND', :lease, current_timestamp)";
     }
 
     @Override
-    public void rollback() {
-        try {
-            connection.get().rollback();
-            connection.get().setAutoCommit(originalAutocommit.get());
-        } catch(Exception e) {
-            throw new RuntimeException(e);
+    protected String exportBaselineQuery(List<String> tables) {
+        StringBuilder sb = new StringBuilder("script nopasswords nosettings table ");
+        for (int i = 0; i < tables.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append('"').append(tables.get(i).replace("\"", "\"\"")).append('"');
         }
+        return sb.toString();
     }
 
     @Override
-    public void end() throws Exception {
-        Connection c = connection.get();
-        if(c != null && !c.isClosed()) {
-            c.close();
-        }
+    protected boolean skipBaselineStatement(String statement) {
+        //the users of the database the baseline is run on are left as they are
+        return statement.regionMatches(true, 0, "create user", 0, "create user".length());
     }
 
     @Override
-    public void ensureTablesExist() throws Exception {
-        Connection c = connection.get();
-        boolean hasDbUpdateTable = c.getMetaData().getTables(null, null, null,new String[]{"db_update_status"}).next();
-        if(!hasDbUpdateTable) {
-            //create missing tables
-            c.createStatement().execute("create table db_update_status(id integer auto_increment, from_version char(32) not null, to_version char(32) not null, since timestamp not null, current integer, user char(256), reference char(256), comment char(256), primary key(id))");
-            c.createStatement().execute("create table db_update_log(id integer auto_increment, level char(16) not null, comment char(1024), tstamp timestamp not null default current_timestamp, primary key(id))");
-        }
+    protected String lastInsertIdQuery() {
+        return "call scope_identity()";
     }
 }
@@ -0,0 +1,761 @@
+package net.jr.deebee.dao;
+
+import net.jr.deebee.UpdateFailureException;
+import net.jr.deebee.UpdatePlanBuilder;
+import net.jr.deebee.model.DbUpdateLog;
+import net.jr.deebee.model.DbUpdateStatus;
+import net.jr.deebee.util.sql.BatchResult;
+import net.jr.deebee.util.sql.BeanBinder;
+import net.jr.deebee.util.sql.NamedPreparedStatement;
+import net.jr.deebee.util.sql.ParameterBinder;
+
+import java.io.Writer;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Dao for any JDBC database, using standard SQL : identity columns, varchar columns and quoted identifiers. The statements
+ * that databases do better with their own idioms are built by protected methods that dialects override, see
+ * {@link DaoDialect}.
+ */
+public class JdbcDao implements Dao {
+
+    private static final String SELECT_CURRENT_VERSION = "select s.to_version from db_update_current c join db_update_status s on s.id = c.status_id where c.id = 1";
+
+    private static final String SELECT_LEGACY_CURRENT_VERSION = "select to_version from db_update_status where current <> 0 order by id desc";
+
+    private static final String SELECT_STATUSES_AFTER_CURRENT = "select id, from_version, to_version, reference from db_update_status where id > coalesce((select status_id from db_update_current where id = 1), 0) order by id";
+
+    /**
+     * the tables of deebee, left out of baselines
+     */
+    private static final List<String> OWN_TABLES = Arrays.asList("db_update_status", "db_update_log", "db_update_current", "db_update_lock");
+
+    private static final String SELECT_CHECKSUMS = "select from_version, to_version, reference, checksum from db_update_status where checksum is not null";
+
+    private static final String INSERT_LOG = "insert into db_update_log(level, comment, tstamp) values(:level, :comment, current_timestamp)";
+
+    private static final String UPDATE_CURRENT = "update db_update_current set status_id = :id where id = 1";
+
+    private static final String INSERT_CURRENT = "insert into db_update_current(id, status_id) values(1, :id)";
+
+    private static final String INSERT_LOCK = "insert into db_update_lock(id, token) values(1, 0)";
+
+    private static final String SELECT_LOCK_TOKEN = "select token from db_update_lock where id = 1 and owner = :owner";
+
+    private static final String RELEASE_LOCK = "update db_update_lock set owner = null, expires_at = null where id = 1 and token = :token";
+
+    private static final String FENCE_LOCK = "select token from db_update_lock where id = 1 and owner = :owner and token = :token for update";
+
+    /**
+     * statements that depend on the dialect, built once.
+     */
+    private static final class Queries {
+
+        private final String insertLog;
+
+        private final String insertStatus;
+
+        private final String upsertCurrent;
+
+        private final String insertLock;
+
+        private final String acquireLock;
+
+        private final String renewLock;
+
+        private Queries(JdbcDao dao) {
+            String returning = dao.supportsReturning() ? " returning id" : "";
+            insertLog = INSERT_LOG + returning;
+            insertStatus = "insert into db_update_status(from_version, to_version, since, " + dao.userColumn() + ", reference, comment, duration, checksum) values(:fromVersion, :toVersion, current_timestamp, :user, :reference, :comment, :duration, :checksum)" + returning;
+            upsertCurrent = dao.upsertCurrentQuery();
+            insertLock = dao.insertLockQuery();
+            acquireLock = "update db_update_lock set owner = :owner, token = token + 1, expires_at = " + dao.leaseExpiry() + " where id = 1 and (owner is null or expires_at < " + dao.now() + ")";
+            renewLock = "update db_update_lock set expires_at = " + dao.leaseExpiry() + " where id = 1 and owner = :owner and token = :token";
+        }
+    }
+
+    /**
+     * connection used between begin() and end(), with the statements prepared on it. Statements are prepared on first
+     * use, as the tables may not exist yet when the session begins, and are reused until end() closes them.
+     */
+    private static class Session {
+
+        private final Connection connection;
+
+        private final boolean originalAutocommit;
+
+        private final Map<String, NamedPreparedStatement> statements = new HashMap<>();
+
+        private final Map<String, ParameterBinder<?>> binders = new HashMap<>();
+
+        private Session(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.originalAutocommit = connection.getAutoCommit();
+        }
+
+        private NamedPreparedStatement statement(String query, int options) throws SQLException {
+            NamedPreparedStatement stmt = statements.get(query);
+            if (stmt == null) {
+                stmt = NamedPreparedStatement.create(connection, query, options);
+                statements.put(query, stmt);
+            }
+            return stmt;
+        }
+
+        private NamedPreparedStatement statement(String query) throws SQLException {
+            return statement(query, Statement.NO_GENERATED_KEYS);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> ParameterBinder<T> binder(String query, Class<T> type) {
+            ParameterBinder<T> binder = (ParameterBinder<T>) binders.get(query);
+            if (binder == null) {
+                binder = BeanBinder.of(type).compile(statements.get(query));
+                binders.put(query, binder);
+            }
+            return binder;
+        }
+
+        private <T> void bind(String query, Class<T> type, T bean) throws SQLException {
+            NamedPreparedStatement stmt = statements.get(query);
+            stmt.clearParameters();
+            binder(query, type).bind(stmt, bean);
+        }
+
+        private void close() throws SQLException {
+            SQLException failure = null;
+            for (NamedPreparedStatement stmt : statements.values()) {
+                try {
+                    stmt.close();
+                } catch (SQLException e) {
+                    failure = e;
+                }
+            }
+            statements.clear();
+            binders.clear();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private Callable<Connection> connectionProvider;
+
+    private Callable<Connection> lockConnectionProvider;
+
+    private ThreadLocal<Session> session = new ThreadLocal<>();
+
+    private volatile Queries queries;
+
+    public JdbcDao(Connection connection) {
+        connectionProvider = () -> connection;
+    }
+
+    /**
+     * @param lockConnectionProvider provides the connections used to take, renew and release the migration lock, which
+     *                               are closed after use. Without it, the lock uses the connection of the dao and its
+     *                               lease cannot be renewed while an update runs.
+     */
+    public JdbcDao(Connection connection, Callable<Connection> lockConnectionProvider) {
+        this(connection);
+        this.lockConnectionProvider = lockConnectionProvider;
+    }
+
+    private Queries queries() {
+        if (queries == null) {
+            queries = new Queries(this);
+        }
+        return queries;
+    }
+
+    /**
+     * @return the name of the column holding the user, a reserved word in most databases
+     */
+    protected String userColumn() {
+        return "\"user\"";
+    }
+
+    /**
+     * @return the statements that create db_update_status, db_update_log and db_update_current
+     */
+    protected List<String> createTableQueries() {
+        return Arrays.asList(
+                "create table db_update_status(id bigint generated by default as identity, from_version varchar(32) not null, to_version varchar(32) not null, since timestamp not null, " + userColumn() + " varchar(256), reference varchar(256), comment varchar(256), duration bigint, checksum varchar(64), primary key(id))",
+                "create table db_update_log(id bigint generated by default as identity, level varchar(16) not null, comment varchar(1024), tstamp timestamp not null default current_timestamp, primary key(id))",
+                createCurrentTableQuery());
+    }
+
+    protected String createCurrentTableQuery() {
+        return "create table db_update_current(id integer not null, status_id bigint not null, primary key(id))";
+    }
+
+    protected String createLockTableQuery() {
+        return "create table db_update_lock(id integer not null, owner varchar(256), token bigint not null, expires_at timestamp, primary key(id))";
+    }
+
+    /**
+     * @return true if inserts can return the generated id with a "returning id" clause
+     */
+    protected boolean supportsReturning() {
+        return false;
+    }
+
+    /**
+     * @return a statement that points db_update_current to the status :id whether its row exists or not, or null to
+     * update the row and insert it when there is none.
+     */
+    protected String upsertCurrentQuery() {
+        return null;
+    }
+
+    /**
+     * @return the statement that creates the row of db_update_lock. It may fail or do nothing when the row exists.
+     */
+    protected String insertLockQuery() {
+        return INSERT_LOCK;
+    }
+
+    /**
+     * @return the current time, in the lock statements. By default the clock of the instance is bound as :now, dialects
+     * use the clock of the database so that the clocks of the instances do not matter.
+     */
+    protected String now() {
+        return ":now";
+    }
+
+    /**
+     * @return the end of a lease of :lease milliseconds starting now, by default bound as :expiresAt
+     */
+    protected String leaseExpiry() {
+        return ":expiresAt";
+    }
+
+    /**
+     * @return the time bound as :now, and from which :expiresAt is computed
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * query that returns the last identity value generated by the session, used when the driver does not support
+     * {@link Statement#getGeneratedKeys()}, or null if there is none.
+     */
+    protected String lastInsertIdQuery() {
+        return null;
+    }
+
+    /**
+     * @param tables the tables and views to export, never empty
+     * @return a query that returns the statements recreating the given tables and their data, one per row, or null if
+     * the database has no such query
+     */
+    protected String exportBaselineQuery(List<String> tables) {
+        return null;
+    }
+
+    /**
+     * @return true if an exported statement must be left out of the baseline, such as the creation of users
+     */
+    protected boolean skipBaselineStatement(String statement) {
+        return false;
+    }
+
+    /**
+     * @return the connection of the current session, or the connection of the dao when no session is begun
+     */
+    private Connection readConnection() throws Exception {
+        Session s = session.get();
+        return s == null ? connectionProvider.call() : s.connection;
+    }
+
+    private Session session() {
+        Session s = session.get();
+        if (s == null) {
+            throw new IllegalStateException("begin() has not been called");
+        }
+        return s;
+    }
+
+    @Override
+    public String getCurrentVersionFromDb() throws Exception {
+        try (ResultSet rs = session().statement(SELECT_CURRENT_VERSION).executeQuery()) {
+            if (rs.next()) {
+                return rs.getString(1);
+            } else {
+                return UpdatePlanBuilder.INITIAL_VERSION;
+            }
+        }
+    }
+
+    @Override
+    public String readCurrentVersion() throws Exception {
+        Connection c = readConnection();
+        try {
+            return probe(c, SELECT_CURRENT_VERSION, rs -> rs.next() ? rs.getString(1).trim() : UpdatePlanBuilder.INITIAL_VERSION);
+        } catch (SQLException e) {
+            //only look at the tables when the query fails, so that the usual case costs a single read
+            if (hasTable(c, "db_update_current")) {
+                throw e;
+            }
+        }
+        if (!hasTable(c, "db_update_status")) {
+            return UpdatePlanBuilder.INITIAL_VERSION;
+        }
+        //tables of a previous version, not migrated yet
+        try (Statement stmt = c.createStatement(); ResultSet rs = stmt.executeQuery(SELECT_LEGACY_CURRENT_VERSION)) {
+            return rs.next() ? rs.getString(1).trim() : UpdatePlanBuilder.INITIAL_VERSION;
+        }
+    }
+
+    @Override
+    public List<DbUpdateStatus> readChecksums() throws Exception {
+        Connection c = readConnection();
+        try {
+            return probe(c, SELECT_CHECKSUMS, rs -> {
+                List<DbUpdateStatus> checksums = new ArrayList<>();
+                while (rs.next()) {
+                    DbUpdateStatus status = new DbUpdateStatus();
+                    status.setFromVersion(rs.getString(1).trim());
+                    status.setToVersion(rs.getString(2).trim());
+                    status.setReference(rs.getString(3) == null ? null : rs.getString(3).trim());
+                    status.setChecksum(rs.getString(4).trim());
+                    checksums.add(status);
+                }
+                return checksums;
+            });
+        } catch (SQLException e) {
+            if (hasTable(c, "db_update_status") && hasColumn(c, "db_update_status", "checksum")) {
+                throw e;
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private interface ResultSetReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * runs a query on tables that may not exist yet. Outside of autocommit, a failure is rolled back to a savepoint :
+     * PostgreSQL aborts the whole transaction when a statement fails, the tables could not even be looked up.
+     */
+    private static <T> T probe(Connection c, String query, ResultSetReader<T> reader) throws SQLException {
+        Savepoint savepoint = c.getAutoCommit() ? null : c.setSavepoint();
+        T result;
+        try (Statement stmt = c.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
+            result = reader.read(rs);
+        } catch (SQLException e) {
+            if (savepoint != null) {
+                c.rollback(savepoint);
+            }
+            throw e;
+        }
+        if (savepoint != null) {
+            c.releaseSavepoint(savepoint);
+        }
+        return result;
+    }
+
+    @Override
+    public void exportBaseline(Writer writer) throws Exception {
+        Connection c = readConnection();
+        List<String> tables = new ArrayList<>();
+        DatabaseMetaData metaData = c.getMetaData();
+        try (ResultSet rs = metaData.getTables(null, c.getSchema(), null, new String[]{"TABLE", "VIEW"})) {
+            while (rs.next()) {
+                String table = rs.getString("TABLE_NAME");
+                if (!OWN_TABLES.contains(table.toLowerCase(Locale.ROOT))) {
+                    tables.add(table);
+                }
+            }
+        }
+        if (tables.isEmpty()) {
+            //an empty baseline would be the cheapest path, and new databases would get the version without the schema
+            throw new UpdateFailureException("the database has no table besides the ones of deebee, there is nothing to export");
+        }
+        String query = exportBaselineQuery(tables);
+        if (query == null) {
+            throw new UnsupportedOperationException(metaData.getDatabaseProductName() + " has no baseline export, dump its schema with its own tools");
+        }
+        try (Statement stmt = c.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) {
+                String statement = rs.getString(1);
+                if (skipBaselineStatement(statement)) {
+                    continue;
+                }
+                writer.write(statement);
+                //comments are written as they are, a semicolon would be part of them
+                String trimmed = statement.trim();
+                writer.write(trimmed.startsWith("--") || trimmed.endsWith(";") ? "\n" : ";\n");
+            }
+        }
+    }
+
+    @Override
+    public void insertLog(DbUpdateLog updateLog)  throws Exception {
+        updateLog.setId(insert(queries().insertLog, DbUpdateLog.class, updateLog));
+    }
+
+    @Override
+    public void insertLogs(List<DbUpdateLog> updateLogs) throws Exception {
+        if (updateLogs.isEmpty()) {
+            return;
+        }
+        Session s = session();
+        NamedPreparedStatement pStmt = s.statement(INSERT_LOG, Statement.RETURN_GENERATED_KEYS);
+        ParameterBinder<DbUpdateLog> binder = s.binder(INSERT_LOG, DbUpdateLog.class);
+        BatchResult result = pStmt.executeBatch(updateLogs, binder, updateLogs.size());
+        long[] keys = result.getGeneratedKeys();
+        if (keys.length == updateLogs.size()) {
+            for (int i = 0; i < keys.length; i++) {
+                updateLogs.get(i).setId(keys[i]);
+            }
+        }
+    }
+
+    @Override
+    public void insertStatus(DbUpdateStatus updateStatus)  throws Exception {
+        updateStatus.setId(insert(queries().insertStatus, DbUpdateStatus.class, updateStatus));
+    }
+
+    @Override
+    public void insertStatus(Connection connection, DbUpdateStatus updateStatus) throws Exception {
+        String query = queries().insertStatus;
+        boolean returning = supportsReturning();
+        try (NamedPreparedStatement pStmt = NamedPreparedStatement.create(connection, query, returning ? Statement.NO_GENERATED_KEYS : Statement.RETURN_GENERATED_KEYS)) {
+            BeanBinder.of(DbUpdateStatus.class).compile(pStmt).bind(pStmt, updateStatus);
+            if (returning) {
+                try (ResultSet rs = pStmt.executeQuery()) {
+                    rs.next();
+                    updateStatus.setId(rs.getLong(1));
+                }
+            } else {
+                pStmt.executeUpdate();
+                updateStatus.setId(generatedId(connection, pStmt));
+            }
+        }
+    }
+
+    @Override
+    public List<DbUpdateStatus> getStatusesAfterCurrent() throws Exception {
+        List<DbUpdateStatus> statuses = new ArrayList<>();
+        try (ResultSet rs = session().statement(SELECT_STATUSES_AFTER_CURRENT).executeQuery()) {
+            while (rs.next()) {
+                DbUpdateStatus status = new DbUpdateStatus();
+                status.setId(rs.getLong(1));
+                status.setFromVersion(rs.getString(2).trim());
+                status.setToVersion(rs.getString(3).trim());
+                status.setReference(rs.getString(4) == null ? null : rs.getString(4).trim());
+                statuses.add(status);
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * @return the id generated by the insert
+     */
+    private <T> long insert(String query, Class<T> type, T bean) throws SQLException {
+        Session s = session();
+        if (supportsReturning()) {
+            NamedPreparedStatement pStmt = s.statement(query);
+            s.bind(query, type, bean);
+            try (ResultSet rs = pStmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+        NamedPreparedStatement pStmt = s.statement(query, Statement.RETURN_GENERATED_KEYS);
+        s.bind(query, type, bean);
+        pStmt.executeUpdate();
+        return generatedId(s.connection, pStmt);
+    }
+
+    /**
+     * @return the key generated by the last execution of the given insert statement.
+     */
+    private long generatedId(Connection connection, NamedPreparedStatement insert) throws SQLException {
+        try (ResultSet rs = insert.getGeneratedKeys()) {
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+        }
+        //the driver does not report generated keys : ask the database for the identity generated in this session
+        String lastInsertIdQuery = lastInsertIdQuery();
+        if (lastInsertIdQuery == null) {
+            throw new IllegalStateException("No keys were generated");
+        }
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(lastInsertIdQuery)) {
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+            throw new IllegalStateException("No keys were generated");
+        }
+    }
+
+    @Override
+    public List<DbUpdateStatus> getMeasuredDurations() throws Exception {
+        List<DbUpdateStatus> durations = new ArrayList<>();
+        try (Statement stmt = session().connection.createStatement();
+             ResultSet rs = stmt.executeQuery("select from_version, to_version, reference, avg(duration) from db_update_status where duration is not null group by from_version, to_version, reference")) {
+            while (rs.next()) {
+                DbUpdateStatus status = new DbUpdateStatus();
+                status.setFromVersion(rs.getString(1).trim());
+                status.setToVersion(rs.getString(2).trim());
+                status.setReference(rs.getString(3) == null ? null : rs.getString(3).trim());
+                status.setDuration(rs.getLong(4));
+                durations.add(status);
+            }
+        }
+        return durations;
+    }
+
+    @Override
+    public void markAsCurrent(DbUpdateStatus updateStatus)  throws Exception {
+        //db_update_current holds a single row pointing to the current status
+        Session s = session();
+        String upsert = queries().upsertCurrent;
+        if (upsert != null) {
+            s.statement(upsert)
+                    .setLong("id", updateStatus.getId())
+                    .executeUpdate();
+            return;
+        }
+        int updated = s.statement(UPDATE_CURRENT)
+                .setLong("id", updateStatus.getId())
+                .executeUpdate();
+        if (updated == 0) {
+            s.statement(INSERT_CURRENT)
+                    .setLong("id", updateStatus.getId())
+                    .executeUpdate();
+        }
+    }
+
+    @Override
+    public void begin()  throws Exception{
+        Session s = new Session(connectionProvider.call());
+        session.set(s);
+        s.connection.setAutoCommit(false);
+    }
+
+    private interface LockCallback<T> {
+        T doWithLock(Connection connection) throws SQLException;
+    }
+
+    /**
+     * runs fn in a transaction of its own, on a lock connection if any.
+     */
+    private <T> T inLockTransaction(LockCallback<T> fn) throws Exception {
+        Connection c = lockConnectionProvider == null ? connectionProvider.call() : lockConnectionProvider.call();
+        try {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                T result = fn.doWithLock(c);
+                c.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        } finally {
+            if (lockConnectionProvider != null) {
+                c.close();
+            }
+        }
+    }
+
+    @Override
+    public LockLease tryLock(String owner, long leaseMillis) throws Exception {
+        Long token = inLockTransaction(c -> {
+            int updated;
+            try {
+                updated = acquireLock(c, owner, leaseMillis);
+            } catch (SQLException e) {
+                //first use : create the lock table, unless another instance has just done it, and try again
+                c.rollback();
+                try (Statement stmt = c.createStatement()) {
+                    stmt.execute(createLockTableQuery());
+                } catch (SQLException alreadyCreated) {
+                    c.rollback();
+                }
+                c.commit();
+                updated = acquireLock(c, owner, leaseMillis);
+            }
+            if (updated == 0) {
+                try (Statement stmt = c.createStatement()) {
+                    stmt.execute(queries().insertLock);
+                    c.commit();
+                    updated = acquireLock(c, owner, leaseMillis);
+                } catch (SQLException alreadyInserted) {
+                    //the lock row exists : the lock is held
+                    c.rollback();
+                }
+            }
+            if (updated == 0) {
+                return null;
+            }
+            try (NamedPreparedStatement stmt = NamedPreparedStatement.create(c, SELECT_LOCK_TOKEN)) {
+                stmt.setString("owner", owner);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    return rs.getLong(1);
+                }
+            }
+        });
+        return token == null ? null : new LockLease(owner, token, leaseMillis, lockConnectionProvider != null);
+    }
+
+    private int acquireLock(Connection c, String owner, long leaseMillis) throws SQLException {
+        try (NamedPreparedStatement stmt = NamedPreparedStatement.create(c, queries().acquireLock)) {
+            bindLease(stmt, leaseMillis);
+            return stmt.setString("owner", owner).executeUpdate();
+        }
+    }
+
+    private void bindLease(NamedPreparedStatement stmt, long leaseMillis) throws SQLException {
+        long now = currentTimeMillis();
+        stmt.setLong("lease", leaseMillis)
+                .setTimestamp("now", new Timestamp(now))
+                .setTimestamp("expiresAt", new Timestamp(now + leaseMillis));
+    }
+
+    @Override
+    public boolean renewLock(LockLease lease) throws Exception {
+        if (!lease.isRenewable()) {
+            throw new IllegalStateException("the lock has no connection of its own, it cannot be renewed");
+        }
+        return inLockTransaction(c -> {
+            try (NamedPreparedStatement stmt = NamedPreparedStatement.create(c, queries().renewLock)) {
+                bindLease(stmt, lease.getLeaseMillis());
+                return stmt.setString("owner", lease.getOwner())
+                        .setLong("token", lease.getToken())
+                        .executeUpdate() == 1;
+            }
+        });
+    }
+
+    @Override
+    public void unlock(LockLease lease) throws Exception {
+        inLockTransaction(c -> {
+            try (NamedPreparedStatement stmt = NamedPreparedStatement.create(c, RELEASE_LOCK)) {
+                return stmt.setLong("token", lease.getToken()).executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public void fence(LockLease lease) throws Exception {
+        NamedPreparedStatement stmt = session().statement(FENCE_LOCK);
+        stmt.setString("owner", lease.getOwner()).setLong("token", lease.getToken());
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new IllegalStateException(lease + " has been lost");
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() {
+        return session().connection;
+    }
+
+    @Override
+    public void checkpoint() throws Exception {
+        session().connection.commit();
+    }
+
+    @Override
+    public void commit()  throws Exception{
+        Session s = session();
+        s.connection.commit();
+        s.connection.setAutoCommit(s.originalAutocommit);
+    }
+
+    @Override
+    public void rollback() {
+        try {
+            Session s = session();
+            s.connection.rollback();
+            s.connection.setAutoCommit(s.originalAutocommit);
+        } catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void end() throws Exception {
+        Session s = session.get();
+        if (s == null) {
+            //only readCurrentVersion() was used
+            Connection c = connectionProvider.call();
+            if (!c.isClosed()) {
+                c.close();
+            }
+            return;
+        }
+        session.remove();
+        try {
+            s.close();
+        } finally {
+            if (!s.connection.isClosed()) {
+                s.connection.close();
+            }
+        }
+    }
+
+    @Override
+    public void ensureTablesExist() throws Exception {
+        Connection c = session().connection;
+        boolean hasDbUpdateTable = hasTable(c, "db_update_status");
+        try (Statement stmt = c.createStatement()) {
+            if (!hasDbUpdateTable) {
+                //create missing tables
+                for (String query : createTableQueries()) {
+                    stmt.execute(query);
+                }
+            } else {
+                //tables created by a previous version
+                if (!hasColumn(c, "db_update_status", "duration")) {
+                    stmt.execute("alter table db_update_status add column duration bigint");
+                }
+                if (!hasColumn(c, "db_update_status", "checksum")) {
+                    stmt.execute("alter table db_update_status add column checksum varchar(64)");
+                }
+                if (!hasTable(c, "db_update_current")) {
+                    stmt.execute(createCurrentTableQuery());
+                    //the current status used to be flagged in db_update_status.current
+                    stmt.execute("insert into db_update_current(id, status_id) select 1, max(id) from db_update_status where current <> 0 having count(*) > 0");
+                }
+            }
+        }
+    }
+
+    private static String identifier(DatabaseMetaData metaData, String name) throws SQLException {
+        return metaData.storesUpperCaseIdentifiers() ? name.toUpperCase(Locale.ROOT) : name;
+    }
+
+    private static boolean hasTable(Connection c, String table) throws SQLException {
+        DatabaseMetaData metaData = c.getMetaData();
+        try (ResultSet rs = metaData.getTables(null, null, identifier(metaData, table), new String[]{"TABLE"})) {
+            return rs.next();
+        }
+    }
+
+    private static boolean hasColumn(Connection c, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = c.getMetaData();
+        try (ResultSet rs = metaData.getColumns(null, null, identifier(metaData, table), identifier(metaData, column))) {
+            return rs.next();
+        }
+    }
+}
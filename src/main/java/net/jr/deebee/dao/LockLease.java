@@ -0,0 +1,51 @@
+package net.jr.deebee.dao;
+
+/**
+ * Migration lock held by an owner until it is released or its lease expires. Each acquisition gets a token greater than
+ * the previous ones, so that a holder whose lease has expired cannot commit once the lock has been taken by another.
+ */
+public final class LockLease {
+
+    private final String owner;
+
+    private final long token;
+
+    private final long leaseMillis;
+
+    private final boolean renewable;
+
+    public LockLease(String owner, long token, long leaseMillis, boolean renewable) {
+        this.owner = owner;
+        this.token = token;
+        this.leaseMillis = leaseMillis;
+        this.renewable = renewable;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the fencing token
+     */
+    public long getToken() {
+        return token;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * @return false when the dao cannot renew the lease while an update runs (it has no connection of its own for the
+     * lock) : the lease would end after leaseMillis, so the runner releases it and refuses to update.
+     */
+    public boolean isRenewable() {
+        return renewable;
+    }
+
+    @Override
+    public String toString() {
+        return "lock #" + token + " held by " + owner;
+    }
+}
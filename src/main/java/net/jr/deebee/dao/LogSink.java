@@ -0,0 +1,50 @@
+package net.jr.deebee.dao;
+
+import net.jr.deebee.model.DbUpdateLog;
+
+/**
+ * Destination of the update log entries written while a plan runs.
+ */
+public interface LogSink {
+
+    enum FlushPolicy {
+        /**
+         * each entry is inserted as soon as it is appended (the default)
+         */
+        IMMEDIATE,
+        /**
+         * entries are buffered and inserted in a batch at the end of each rule
+         */
+        PER_STEP,
+        /**
+         * entries are buffered and inserted in a batch just before the transaction is committed
+         */
+        ON_COMMIT,
+        /**
+         * entries are buffered and inserted in a batch once the flush interval has elapsed, checked when an entry is
+         * appended or a rule ends
+         */
+        INTERVAL
+    }
+
+    void append(DbUpdateLog log) throws Exception;
+
+    /**
+     * called by the runner after each rule.
+     */
+    default void stepCompleted() throws Exception {
+    }
+
+    /**
+     * writes all buffered entries.
+     */
+    default void flush() throws Exception {
+    }
+
+    static LogSink create(Dao dao, FlushPolicy policy, int bufferSize, long flushIntervalMillis) {
+        if (policy == null || policy == FlushPolicy.IMMEDIATE) {
+            return dao::insertLog;
+        }
+        return new BufferedLogSink(dao, policy, bufferSize, flushIntervalMillis);
+    }
+}
@@ -0,0 +1,155 @@
+package net.jr.deebee.dao;
+
+import net.jr.deebee.UpdateFailureException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Migration lock of a run : waits for the lock shared by all the instances that update the database, renews its lease
+ * from a heartbeat thread while the update runs, fences the commits and releases it.
+ */
+public class MigrationLock {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MigrationLock.class);
+
+    private final Dao dao;
+
+    private final String owner;
+
+    private final long leaseMillis;
+
+    private final long pollIntervalMillis;
+
+    private final long timeoutMillis;
+
+    private LockLease lease;
+
+    private ScheduledExecutorService heartbeat;
+
+    private volatile boolean lost;
+
+    /**
+     * @param leaseMillis   how long the lock is held without being renewed, it is renewed every third of the lease
+     * @param timeoutMillis how long to wait for the lock before failing
+     */
+    public MigrationLock(Dao dao, String owner, long leaseMillis, long pollIntervalMillis, long timeoutMillis) {
+        this.dao = dao;
+        this.owner = owner;
+        this.leaseMillis = leaseMillis;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Waits for the lock, polling it every pollIntervalMillis, and starts renewing its lease once it is taken.
+     *
+     * @param done tells whether the work protected by the lock has been done in the meantime, by another holder
+     * @return true if the lock is held, false if the work has been done
+     * @throws UpdateFailureException on timeout, or if the dao cannot renew the lease (see {@link LockLease#isRenewable()})
+     */
+    public boolean acquire(BooleanSupplier done) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            LockLease taken = dao.tryLock(owner, leaseMillis);
+            if (taken != null) {
+                //the previous holder may have done the work between the first check and now
+                if (done.getAsBoolean()) {
+                    dao.unlock(taken);
+                    return false;
+                }
+                if (!taken.isRenewable()) {
+                    //the lease would expire during a long update, and let another instance in
+                    dao.unlock(taken);
+                    throw new UpdateFailureException("the migration lock cannot be renewed on a single connection, use a DataSource or a connection provider");
+                }
+                LOGGER.info("took " + taken);
+                lease = taken;
+                startHeartbeat();
+                return true;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new UpdateFailureException("timeout while waiting for the migration lock");
+            }
+            Thread.sleep(pollIntervalMillis);
+            if (done.getAsBoolean()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the lease, null if the lock is not held
+     */
+    public LockLease getLease() {
+        return lease;
+    }
+
+    private void startHeartbeat() {
+        final LockLease renewed = lease;
+        lost = false;
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "deebee-lock-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat = executor;
+        long period = Math.max(1, renewed.getLeaseMillis() / 3);
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                if (!dao.renewLock(renewed)) {
+                    //another instance holds the lock : stop renewing, the update fails when it is fenced
+                    lost = true;
+                    LOGGER.error(renewed + " has been lost");
+                    executor.shutdown();
+                }
+            } catch (Exception e) {
+                LOGGER.warn("could not renew " + renewed, e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stops renewing the lease, which still protects the final commit until it expires or is released.
+     */
+    public void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+    }
+
+    /**
+     * fails if the lease has been lost : at once if the heartbeat could not renew it, otherwise when the database finds
+     * it taken, see {@link Dao#fence(LockLease)}.
+     */
+    public void fence() throws Exception {
+        if (lease == null) {
+            return;
+        }
+        if (lost) {
+            throw new IllegalStateException(lease + " has been lost");
+        }
+        dao.fence(lease);
+    }
+
+    /**
+     * stops the heartbeat and releases the lock if it is held. A failure is only logged, the lease expires anyway.
+     */
+    public void release() {
+        stopHeartbeat();
+        if (lease == null) {
+            return;
+        }
+        try {
+            dao.unlock(lease);
+        } catch (Exception e) {
+            LOGGER.error("could not release " + lease, e);
+        }
+        lease = null;
+    }
+}
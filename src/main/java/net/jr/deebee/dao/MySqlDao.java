@@ -0,0 +1,63 @@
+package net.jr.deebee.dao;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * MySQL and MariaDB dialect.
+ */
+public class MySqlDao extends JdbcDao {
+
+    public MySqlDao(Connection connection) {
+        super(connection);
+    }
+
+    public MySqlDao(Connection connection, Callable<Connection> lockConnectionProvider) {
+        super(connection, lockConnectionProvider);
+    }
+
+    @Override
+    protected String userColumn() {
+        return "`user`";
+    }
+
+    @Override
+    protected List<String> createTableQueries() {
+        return Arrays.asList(
+                "create table db_update_status(id bigint auto_increment, from_version varchar(32) not null, to_version varchar(32) not null, since timestamp(3) not null, `user` varchar(256), reference varchar(256), comment varchar(256), duration bigint, checksum varchar(64), primary key(id))",
+                "create table db_update_log(id bigint auto_increment, level varchar(16) not null, comment varchar(1024), tstamp timestamp(3) not null default current_timestamp(3), primary key(id))",
+                createCurrentTableQuery());
+    }
+
+    @Override
+    protected String createLockTableQuery() {
+        return "create table db_update_lock(id integer not null, owner varchar(256), token bigint not null, expires_at timestamp(3) null, primary key(id))";
+    }
+
+    @Override
+    protected String upsertCurrentQuery() {
+        return "insert into db_update_current(id, status_id) values(1, :id) on duplicate key update status_id = values(status_id)";
+    }
+
+    @Override
+    protected String insertLockQuery() {
+        return "insert ignore into db_update_lock(id, token) values(1, 0)";
+    }
+
+    @Override
+    protected String now() {
+        return "current_timestamp(3)";
+    }
+
+    @Override
+    protected String leaseExpiry() {
+        return "timestampadd(MICROSECOND, :lease * 1000, current_timestamp(3))";
+    }
+
+    @Override
+    protected String lastInsertIdQuery() {
+        return "select last_insert_id()";
+    }
+}
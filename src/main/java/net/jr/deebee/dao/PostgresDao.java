@@ -0,0 +1,48 @@
+package net.jr.deebee.dao;
+
+import java.sql.Connection;
+import java.util.concurrent.Callable;
+
+/**
+ * PostgreSQL dialect : ids are returned by the inserts themselves, and the current status is upserted.
+ */
+public class PostgresDao extends JdbcDao {
+
+    public PostgresDao(Connection connection) {
+        super(connection);
+    }
+
+    public PostgresDao(Connection connection, Callable<Connection> lockConnectionProvider) {
+        super(connection, lockConnectionProvider);
+    }
+
+    @Override
+    protected boolean supportsReturning() {
+        return true;
+    }
+
+    @Override
+    protected String upsertCurrentQuery() {
+        return "insert into db_update_current(id, status_id) values(1, :id) on conflict (id) do update set status_id = excluded.status_id";
+    }
+
+    @Override
+    protected String insertLockQuery() {
+        return "insert into db_update_lock(id, token) values(1, 0) on conflict do nothing";
+    }
+
+    @Override
+    protected String now() {
+        return "current_timestamp";
+    }
+
+    @Override
+    protected String leaseExpiry() {
+        return "current_timestamp + :lease * interval '1 millisecond'";
+    }
+
+    @Override
+    protected String lastInsertIdQuery() {
+        return "select lastval()";
+    }
+}
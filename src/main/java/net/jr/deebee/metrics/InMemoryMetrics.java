@@ -0,0 +1,118 @@
+package net.jr.deebee.metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default recorder : keeps count, total and max per metric and tag, and the slowest statements.
+ */
+public class InMemoryMetrics implements MetricsRecorder {
+
+    private static final int MAX_SQL_LENGTH = 256;
+
+    private static class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private void add(long value) {
+            count.increment();
+            total.add(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Stats>> metrics = new ConcurrentHashMap<>();
+
+    private final int slowestStatementsSize;
+
+    private final TreeSet<MetricSnapshot> slowestStatements = new TreeSet<>(
+            Comparator.comparingLong(MetricSnapshot::getTotal).reversed()
+                    .thenComparing(MetricSnapshot::getTag)
+                    .thenComparing(MetricSnapshot::getMetric));
+
+    public InMemoryMetrics() {
+        this(10);
+    }
+
+    /**
+     * @param slowestStatementsSize how many of the slowest statements are kept
+     */
+    public InMemoryMetrics(int slowestStatementsSize) {
+        this.slowestStatementsSize = slowestStatementsSize;
+    }
+
+    private void add(String metric, String tag, long value) {
+        metrics.computeIfAbsent(metric, m -> new ConcurrentHashMap<>())
+                .computeIfAbsent(tag == null ? "" : tag, t -> new Stats())
+                .add(value);
+    }
+
+    @Override
+    public void recordTime(String metric, String tag, long nanos) {
+        add(metric, tag, nanos);
+    }
+
+    @Override
+    public void recordCount(String metric, String tag, long count) {
+        add(metric, tag, count);
+    }
+
+    @Override
+    public void recordStatement(String script, String sql, long nanos, int updateCount) {
+        MetricsRecorder.super.recordStatement(script, sql, nanos, updateCount);
+        if (slowestStatementsSize > 0) {
+            synchronized (slowestStatements) {
+                if (slowestStatements.size() < slowestStatementsSize || nanos > slowestStatements.last().getTotal()) {
+                    String text = sql.length() > MAX_SQL_LENGTH ? sql.substring(0, MAX_SQL_LENGTH) + " ..." : sql;
+                    slowestStatements.add(new MetricSnapshot(text, script, 1, nanos, nanos));
+                    if (slowestStatements.size() > slowestStatementsSize) {
+                        slowestStatements.pollLast();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the aggregated values of every metric, sorted by metric and tag
+     */
+    public List<MetricSnapshot> getMetrics() {
+        List<MetricSnapshot> snapshots = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentHashMap<String, Stats>> metric : metrics.entrySet()) {
+            for (Map.Entry<String, Stats> tag : metric.getValue().entrySet()) {
+                Stats stats = tag.getValue();
+                snapshots.add(new MetricSnapshot(metric.getKey(), tag.getKey(), stats.count.sum(), stats.total.sum(), stats.max.get()));
+            }
+        }
+        snapshots.sort(Comparator.comparing(MetricSnapshot::getMetric).thenComparing(MetricSnapshot::getTag));
+        return snapshots;
+    }
+
+    /**
+     * @return the aggregated values of a metric for a tag, or null if it was never recorded
+     */
+    public MetricSnapshot get(String metric, String tag) {
+        Map<String, Stats> tags = metrics.get(metric);
+        Stats stats = tags == null ? null : tags.get(tag == null ? "" : tag);
+        return stats == null ? null : new MetricSnapshot(metric, tag, stats.count.sum(), stats.total.sum(), stats.max.get());
+    }
+
+    /**
+     * @return the slowest statements, slowest first : the metric holds the sql text and the tag the script name
+     */
+    public List<MetricSnapshot> getSlowestStatements() {
+        synchronized (slowestStatements) {
+            return new ArrayList<>(slowestStatements);
+        }
+    }
+
+    public void reset() {
+        metrics.clear();
+        synchronized (slowestStatements) {
+            slowestStatements.clear();
+        }
+    }
+}
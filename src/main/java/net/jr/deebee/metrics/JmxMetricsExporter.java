@@ -0,0 +1,54 @@
+package net.jr.deebee.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Publishes an {@link InMemoryMetrics} as an MXBean.
+ */
+public class JmxMetricsExporter implements MetricsMXBean {
+
+    public static final String DEFAULT_OBJECT_NAME = "net.jr.deebee:type=Metrics";
+
+    private final InMemoryMetrics metrics;
+
+    private final ObjectName objectName;
+
+    private JmxMetricsExporter(InMemoryMetrics metrics, ObjectName objectName) {
+        this.metrics = metrics;
+        this.objectName = objectName;
+    }
+
+    public static JmxMetricsExporter register(InMemoryMetrics metrics) throws JMException {
+        return register(metrics, DEFAULT_OBJECT_NAME);
+    }
+
+    public static JmxMetricsExporter register(InMemoryMetrics metrics, String objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        JmxMetricsExporter exporter = new JmxMetricsExporter(metrics, new ObjectName(objectName));
+        server.registerMBean(exporter, exporter.objectName);
+        return exporter;
+    }
+
+    public void unregister() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    @Override
+    public List<MetricSnapshot> getMetrics() {
+        return metrics.getMetrics();
+    }
+
+    @Override
+    public List<MetricSnapshot> getSlowestStatements() {
+        return metrics.getSlowestStatements();
+    }
+
+    @Override
+    public void reset() {
+        metrics.reset();
+    }
+}
@@ -0,0 +1,59 @@
+package net.jr.deebee.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Aggregated values of a metric for one tag. For counters, total is the sum of the counts and max the largest one.
+ */
+public class MetricSnapshot {
+
+    private final String metric;
+
+    private final String tag;
+
+    private final long count;
+
+    private final long total;
+
+    private final long max;
+
+    @ConstructorProperties({"metric", "tag", "count", "total", "max"})
+    public MetricSnapshot(String metric, String tag, long count, long total, long max) {
+        this.metric = metric;
+        this.tag = tag;
+        this.count = count;
+        this.total = total;
+        this.max = max;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return how many times the metric was recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum of the recorded values (nanoseconds for timers)
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return metric + "[" + tag + "] count=" + count + " total=" + total + " max=" + max;
+    }
+}
@@ -0,0 +1,12 @@
+package net.jr.deebee.metrics;
+
+import java.util.List;
+
+public interface MetricsMXBean {
+
+    List<MetricSnapshot> getMetrics();
+
+    List<MetricSnapshot> getSlowestStatements();
+
+    void reset();
+}
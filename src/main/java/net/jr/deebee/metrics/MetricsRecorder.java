@@ -0,0 +1,101 @@
+package net.jr.deebee.metrics;
+
+/**
+ * Receives the timings and counts measured while a plan runs. Implementations must be thread-safe, as the rules of a
+ * parallel group report from several threads.
+ */
+public interface MetricsRecorder {
+
+    /**
+     * wall time of a rule, tagged with the rule reference (or its versions when it has none)
+     */
+    String RULE = "deebee.rule";
+
+    /**
+     * wall time of a sql script, tagged with the script name
+     */
+    String SCRIPT = "deebee.script";
+
+    /**
+     * wall time of a single sql statement, tagged with the script name
+     */
+    String STATEMENT = "deebee.statement";
+
+    /**
+     * wall time of a JDBC batch of statements, tagged with the script name
+     */
+    String BATCH = "deebee.batch";
+
+    /**
+     * rows affected by the statements of a script, tagged with the script name
+     */
+    String ROWS = "deebee.rows";
+
+    /**
+     * time to get a connection, tagged with "dao" or "parallel"
+     */
+    String CONNECTION = "deebee.connection";
+
+    /**
+     * time to resolve the path from the current version to the target version
+     */
+    String PATH_RESOLUTION = "deebee.path";
+
+    /**
+     * time to compare the checksums of the applied scripts with their current content
+     */
+    String VERIFY = "deebee.verify";
+
+    String COMMIT = "deebee.commit";
+
+    String ROLLBACK = "deebee.rollback";
+
+    MetricsRecorder NONE = new MetricsRecorder() {
+        @Override
+        public void recordTime(String metric, String tag, long nanos) {
+        }
+
+        @Override
+        public void recordCount(String metric, String tag, long count) {
+        }
+    };
+
+    void recordTime(String metric, String tag, long nanos);
+
+    void recordCount(String metric, String tag, long count);
+
+    /**
+     * records the execution of one statement of a script.
+     */
+    default void recordStatement(String script, String sql, long nanos, int updateCount) {
+        recordTime(STATEMENT, script, nanos);
+        if (updateCount > 0) {
+            recordCount(ROWS, script, updateCount);
+        }
+    }
+
+    static MetricsRecorder composite(MetricsRecorder... recorders) {
+        return new MetricsRecorder() {
+            @Override
+            public void recordTime(String metric, String tag, long nanos) {
+                for (MetricsRecorder recorder : recorders) {
+                    recorder.recordTime(metric, tag, nanos);
+                }
+            }
+
+            @Override
+            public void recordCount(String metric, String tag, long count) {
+                for (MetricsRecorder recorder : recorders) {
+                    recorder.recordCount(metric, tag, count);
+                }
+            }
+
+            @Override
+            public void recordStatement(String script, String sql, long nanos, int updateCount) {
+                for (MetricsRecorder recorder : recorders) {
+                    recorder.recordStatement(script, sql, nanos, updateCount);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,36 @@
+package net.jr.deebee.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards the metrics to a Micrometer registry, as timers and distribution summaries tagged with "name".
+ * Needs io.micrometer:micrometer-core on the classpath, it is an optional dependency.
+ */
+public class MicrometerMetricsRecorder implements MetricsRecorder {
+
+    private final MeterRegistry registry;
+
+    public MicrometerMetricsRecorder(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordTime(String metric, String tag, long nanos) {
+        Timer.builder(metric)
+                .tag("name", tag == null ? "" : tag)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordCount(String metric, String tag, long count) {
+        DistributionSummary.builder(metric)
+                .tag("name", tag == null ? "" : tag)
+                .register(registry)
+                .record(count);
+    }
+}
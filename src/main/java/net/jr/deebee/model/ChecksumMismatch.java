@@ -0,0 +1,51 @@
+package net.jr.deebee.model;
+
+/**
+ * An applied rule whose script has changed since it was applied, or is not part of the plan anymore.
+ */
+public class ChecksumMismatch {
+
+    private final DbUpdateStatus status;
+
+    private final String actualChecksum;
+
+    public ChecksumMismatch(DbUpdateStatus status, String actualChecksum) {
+        this.status = status;
+        this.actualChecksum = actualChecksum;
+    }
+
+    /**
+     * @return the status recorded when the rule was applied, holding the expected checksum
+     */
+    public DbUpdateStatus getStatus() {
+        return status;
+    }
+
+    public String getExpectedChecksum() {
+        return status.getChecksum();
+    }
+
+    /**
+     * @return the checksum of the current content of the script, null if it is missing
+     */
+    public String getActualChecksum() {
+        return actualChecksum;
+    }
+
+    /**
+     * @return true if no rule of the plan runs the script anymore
+     */
+    public boolean isMissing() {
+        return actualChecksum == null;
+    }
+
+    @Override
+    public String toString() {
+        if (isMissing()) {
+            return status.getFromVersion() + " -> " + status.getToVersion() + " : " + status.getReference()
+                    + " has been applied but is missing from the plan";
+        }
+        return status.getFromVersion() + " -> " + status.getToVersion() + " : " + status.getReference()
+                + " has changed since it was applied (" + getExpectedChecksum() + " / " + actualChecksum + ")";
+    }
+}
@@ -20,6 +20,10 @@ public class DbUpdateStatus {
 
     private String comment;
 
+    private Long duration;
+
+    private String checksum;
+
     public long getId() {
         return id;
     }
@@ -83,4 +87,26 @@ public class DbUpdateStatus {
     public String getReference() {
         return reference;
     }
+
+    /**
+     * @return how long the rule took to execute, in milliseconds
+     */
+    public Long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(Long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return the SHA-256 of the script of the rule when it was applied, or null if the rule has no script
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
 }
@@ -0,0 +1,45 @@
+package net.jr.deebee.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a run would do : the rules from the current version of the database to the target version, in order.
+ */
+public class ExecutionPlan {
+
+    private final String currentVersion;
+
+    private final String targetVersion;
+
+    private final List<PlannedStep> steps;
+
+    public ExecutionPlan(String currentVersion, String targetVersion, List<PlannedStep> steps) {
+        this.currentVersion = currentVersion;
+        this.targetVersion = targetVersion;
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    public String getCurrentVersion() {
+        return currentVersion;
+    }
+
+    public String getTargetVersion() {
+        return targetVersion;
+    }
+
+    public List<PlannedStep> getSteps() {
+        return steps;
+    }
+
+    public boolean isUpToDate() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * @return the sum of the costs of the steps, in seconds
+     */
+    public double getCost() {
+        return steps.stream().mapToDouble(PlannedStep::getCost).sum();
+    }
+}
@@ -0,0 +1,58 @@
+package net.jr.deebee.model;
+
+import net.jr.deebee.UpdatePlanConfig;
+import net.jr.deebee.util.sql.SqlScriptRunner;
+import net.jr.deebee.util.sql.SqlStatementReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A rule of an {@link ExecutionPlan}.
+ */
+public class PlannedStep {
+
+    private final UpdateRule rule;
+
+    public PlannedStep(UpdateRule rule) {
+        this.rule = rule;
+    }
+
+    public UpdateRule getRule() {
+        return rule;
+    }
+
+    /**
+     * @return the cost used when the path was resolved, in seconds
+     */
+    public double getCost() {
+        return rule.getCost();
+    }
+
+    /**
+     * @return the statements of the script of the rule, read on each call. Empty when the rule does not run a script.
+     */
+    public List<String> getStatements() throws IOException {
+        if (rule.getScript() == null) {
+            return Collections.emptyList();
+        }
+        List<String> statements = new ArrayList<>();
+        UpdatePlanConfig config = rule.getPlan().getConfig();
+        try (SqlStatementReader reader = new SqlStatementReader(SqlScriptRunner.open(rule.getScript()))
+                .setBackslashEscapes(Boolean.TRUE.equals(config.get(UpdatePlanConfig.SQL_BACKSLASH_ESCAPES)))
+                .setNestedComments(Boolean.TRUE.equals(config.get(UpdatePlanConfig.SQL_NESTED_COMMENTS)))) {
+            String statement;
+            while ((statement = reader.next()) != null) {
+                statements.add(statement);
+            }
+        }
+        return statements;
+    }
+
+    @Override
+    public String toString() {
+        return rule.getFromVersion() + " -> " + rule.getTargetVersion() + (rule.getReference() == null ? "" : " : " + rule.getReference());
+    }
+}
@@ -0,0 +1,96 @@
+package net.jr.deebee.model;
+
+import org.jdeferred.AlwaysCallback;
+import org.jdeferred.DoneCallback;
+import org.jdeferred.FailCallback;
+import org.jdeferred.Promise;
+import org.jdeferred.impl.DeferredObject;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Action of a rule, as built by {@link net.jr.deebee.UpdatePlanBuilder.UpdateRuleBuilder#action(DoneCallback)}.
+ * The done callbacks registered with then(...) are recorded instead of being bound to a single resolution, so that
+ * the runner can execute the whole chain on an executor, in order, wait for it, and get its failures. The fail
+ * callbacks are notified when one of the done callbacks throws. Once the chain has run, the promise is resolved or
+ * rejected : its always callbacks are notified and {@link #waitSafely()} returns. When the rule is executed again, by
+ * another run of the same plan, the promise goes back to pending until the new execution completes.
+ */
+public class RuleAction extends DeferredObject<UpdateRule, Throwable, Void> {
+
+    private final List<DoneCallback<UpdateRule>> doneCallbacks = new CopyOnWriteArrayList<>();
+
+    private final List<FailCallback<Throwable>> failCallbacks = new CopyOnWriteArrayList<>();
+
+    @Override
+    public Promise<UpdateRule, Throwable, Void> done(DoneCallback<UpdateRule> callback) {
+        doneCallbacks.add(callback);
+        return this;
+    }
+
+    @Override
+    public Promise<UpdateRule, Throwable, Void> fail(FailCallback<Throwable> callback) {
+        failCallbacks.add(callback);
+        return this;
+    }
+
+    /**
+     * @return a future that completes once every callback has run, or exceptionally with the first failure.
+     */
+    public CompletableFuture<UpdateRule> execute(UpdateRule rule, Executor executor) {
+        synchronized (this) {
+            state = State.PENDING;
+        }
+        CompletableFuture<UpdateRule> future = CompletableFuture.completedFuture(rule);
+        for (DoneCallback<UpdateRule> callback : doneCallbacks) {
+            future = future.thenApplyAsync(r -> {
+                callback.onDone(r);
+                return r;
+            }, executor);
+        }
+        return future.whenComplete((r, t) -> {
+            Throwable cause = null;
+            if (t != null) {
+                cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                for (FailCallback<Throwable> failCallback : failCallbacks) {
+                    failCallback.onFail(cause);
+                }
+            }
+            settle(rule, cause);
+        });
+    }
+
+    /**
+     * records the outcome of an execution, then notifies the {@link AlwaysCallback}s and the threads waiting for it.
+     */
+    private synchronized void settle(UpdateRule rule, Throwable failure) {
+        resolveResult = failure == null ? rule : null;
+        rejectResult = failure;
+        state = failure == null ? State.RESOLVED : State.REJECTED;
+        try {
+            triggerAlways(state, resolveResult, rejectResult);
+        } finally {
+            notifyAll();
+        }
+    }
+
+    /**
+     * runs the callbacks on the calling thread, failures are rethrown.
+     */
+    @Override
+    public RuleAction resolve(UpdateRule rule) {
+        try {
+            execute(rule, Runnable::run).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return this;
+    }
+}
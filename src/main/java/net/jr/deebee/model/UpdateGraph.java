@@ -0,0 +1,140 @@
+package net.jr.deebee.model;
+
+import com.github.zafarkhaja.semver.Version;
+
+import java.util.*;
+
+/**
+ * Immutable adjacency index of the rules of an {@link UpdatePlan}, keyed by version.
+ * Rules that go from the same version to the same version are parallel edges, kept in a deterministic order.
+ */
+public class UpdateGraph {
+
+    private static final Comparator<UpdateRule> RULE_ORDER = Comparator.comparing(UpdateRule::getReference, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final Map<Version, Map<Version, List<UpdateRule>>> successors;
+
+    private final Map<Version, Map<Version, List<UpdateRule>>> predecessors;
+
+    private final Version latestVersion;
+
+    private final int maxMajorStep, maxMinorStep, maxPatchStep;
+
+    public UpdateGraph(Collection<UpdateRule> rules) {
+        Map<Version, Map<Version, List<UpdateRule>>> succ = new HashMap<>();
+        Map<Version, Map<Version, List<UpdateRule>>> pred = new HashMap<>();
+        Version latest = null;
+        int majorStep = 0, minorStep = 0, patchStep = 0;
+
+        for (UpdateRule rule : rules) {
+            succ.computeIfAbsent(rule.getFromVersion(), v -> new TreeMap<>())
+                    .computeIfAbsent(rule.getTargetVersion(), v -> new ArrayList<>())
+                    .add(rule);
+            pred.computeIfAbsent(rule.getTargetVersion(), v -> new TreeMap<>())
+                    .computeIfAbsent(rule.getFromVersion(), v -> new ArrayList<>())
+                    .add(rule);
+            if (latest == null || rule.getTargetVersion().greaterThan(latest)) {
+                latest = rule.getTargetVersion();
+            }
+            majorStep = Math.max(majorStep, Math.abs(rule.getTargetVersion().getMajorVersion() - rule.getFromVersion().getMajorVersion()));
+            minorStep = Math.max(minorStep, Math.abs(rule.getTargetVersion().getMinorVersion() - rule.getFromVersion().getMinorVersion()));
+            patchStep = Math.max(patchStep, Math.abs(rule.getTargetVersion().getPatchVersion() - rule.getFromVersion().getPatchVersion()));
+        }
+
+        this.successors = freeze(succ);
+        this.predecessors = freeze(pred);
+        this.latestVersion = latest;
+        this.maxMajorStep = majorStep;
+        this.maxMinorStep = minorStep;
+        this.maxPatchStep = patchStep;
+    }
+
+    private static Map<Version, Map<Version, List<UpdateRule>>> freeze(Map<Version, Map<Version, List<UpdateRule>>> index) {
+        for (Map.Entry<Version, Map<Version, List<UpdateRule>>> entry : index.entrySet()) {
+            for (Map.Entry<Version, List<UpdateRule>> edge : entry.getValue().entrySet()) {
+                edge.getValue().sort(RULE_ORDER);
+                edge.setValue(Collections.unmodifiableList(edge.getValue()));
+            }
+            entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * @return the versions that can be reached from the given version by applying a single rule, in ascending order.
+     */
+    public Set<Version> getSuccessors(Version version) {
+        return successors.getOrDefault(version, Collections.emptyMap()).keySet();
+    }
+
+    /**
+     * @return the versions from which a single rule leads to the given version, in ascending order.
+     */
+    public Set<Version> getPredecessors(Version version) {
+        return predecessors.getOrDefault(version, Collections.emptyMap()).keySet();
+    }
+
+    /**
+     * @return all the rules that go from one version to the other.
+     */
+    public List<UpdateRule> getRules(Version from, Version to) {
+        return successors.getOrDefault(from, Collections.emptyMap()).getOrDefault(to, Collections.emptyList());
+    }
+
+    /**
+     * @return the cheapest rule that goes from one version to the other, or null if there is none.
+     */
+    public UpdateRule getRule(Version from, Version to) {
+        UpdateRule cheapest = null;
+        for (UpdateRule rule : getRules(from, to)) {
+            if (cheapest == null || rule.getCost() < cheapest.getCost()) {
+                cheapest = rule;
+            }
+        }
+        return cheapest;
+    }
+
+    public boolean contains(Version version) {
+        return successors.containsKey(version) || predecessors.containsKey(version);
+    }
+
+    /**
+     * Lower bound of the number of rules needed to go from one version to the other, based on the largest jump that a
+     * single rule makes on each semver component. Never overestimates, so it can be used as an A* heuristic.
+     *
+     * @return 0 when the versions are equal, {@link Double#POSITIVE_INFINITY} when no sequence of rules can change the
+     * differing component.
+     */
+    public double minimumSteps(Version from, Version to) {
+        if (from.equals(to)) {
+            return 0;
+        }
+        double steps = steps(from.getMajorVersion(), to.getMajorVersion(), maxMajorStep);
+        //lower components are only bounded when no rule changes the higher ones
+        if (maxMajorStep == 0) {
+            steps = Math.max(steps, steps(from.getMinorVersion(), to.getMinorVersion(), maxMinorStep));
+            if (maxMinorStep == 0) {
+                steps = Math.max(steps, steps(from.getPatchVersion(), to.getPatchVersion(), maxPatchStep));
+            }
+        }
+        return Math.max(1, steps);
+    }
+
+    private static double steps(int from, int to, int maxStep) {
+        int delta = Math.abs(to - from);
+        if (delta == 0) {
+            return 0;
+        }
+        if (maxStep == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return (delta + maxStep - 1) / maxStep;
+    }
+
+    /**
+     * @return the highest target version of all rules, or null if there are no rules.
+     */
+    public Version getLatestVersion() {
+        return latestVersion;
+    }
+}
@@ -1,10 +1,11 @@
 package net.jr.deebee.model;
 
 import net.jr.deebee.UpdatePlanConfig;
+import net.jr.deebee.util.Sha256;
 
-import java.util.HashSet;
-import java.util.Properties;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
 
 public class UpdatePlan {
 
@@ -14,10 +15,50 @@ public class UpdatePlan {
 
     private UpdatePlanConfig config;
 
+    private UpdateGraph graph;
+
+    private String fingerprint;
+
     public Set<UpdateRule> getRules() {
         return rules;
     }
 
+    /**
+     * @return the version index of the rules, built on first access : rules should not be added after that.
+     */
+    public UpdateGraph getGraph() {
+        if (graph == null) {
+            graph = new UpdateGraph(rules);
+        }
+        return graph;
+    }
+
+    /**
+     * @return a digest of the versions, references, parallel groups and costs of the rules : two plans with the same
+     * fingerprint resolve the same paths. It is computed again after a cost changes.
+     */
+    public synchronized String getFingerprint() {
+        if (fingerprint == null) {
+            List<String> descriptions = new ArrayList<>(rules.size());
+            for (UpdateRule rule : rules) {
+                descriptions.add(rule.getFromVersion() + ">" + rule.getTargetVersion() + "|" + rule.getReference()
+                        + "|" + rule.getParallelGroup() + "|" + rule.getCost());
+            }
+            Collections.sort(descriptions);
+            MessageDigest digest = Sha256.newDigest();
+            for (String description : descriptions) {
+                digest.update(description.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            fingerprint = Sha256.toHex(digest.digest());
+        }
+        return fingerprint;
+    }
+
+    synchronized void invalidateFingerprint() {
+        fingerprint = null;
+    }
+
     public String getProperty(String key) {
         return properties.getProperty(key);
     }
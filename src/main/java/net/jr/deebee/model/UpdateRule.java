@@ -3,8 +3,25 @@ package net.jr.deebee.model;
 import com.github.zafarkhaja.semver.Version;
 import org.jdeferred.Deferred;
 
+import java.net.URL;
+
 public class UpdateRule {
 
+    /**
+     * cost of a rule whose duration is neither declared nor known from previous runs.
+     */
+    public static final double DEFAULT_COST = 1.0;
+
+    /**
+     * lowest measured cost : rules measured at 0 ms would make every path through them free.
+     */
+    public static final double MIN_MEASURED_COST = 0.001;
+
+    /**
+     * cost of a baseline, which replaces the whole chain of rules it was exported from and is always preferred to it.
+     */
+    public static final double BASELINE_COST = 0.001;
+
     private UpdatePlan plan;
 
     private String comment, reference;
@@ -13,6 +30,14 @@ public class UpdateRule {
 
     private Deferred<UpdateRule, ?, ?> action;
 
+    private Double estimatedCost, measuredCost;
+
+    private String parallelGroup;
+
+    private URL script;
+
+    private String scriptHash;
+
     public UpdateRule(UpdatePlan plan) {
         this.plan = plan;
     }
@@ -57,6 +82,86 @@ public class UpdateRule {
         return reference;
     }
 
+    /**
+     * @return the declared cost estimate, in seconds, or null if none was given.
+     */
+    public Double getEstimatedCost() {
+        return estimatedCost;
+    }
+
+    public void setEstimatedCost(Double estimatedCost) {
+        this.estimatedCost = estimatedCost;
+        costChanged();
+    }
+
+    /**
+     * @return the average duration of the previous executions of this rule on the database, in seconds, at least
+     * {@link #MIN_MEASURED_COST}, or null if unknown.
+     */
+    public Double getMeasuredCost() {
+        return measuredCost;
+    }
+
+    public void setMeasuredCost(Double measuredCost) {
+        this.measuredCost = measuredCost == null ? null : Math.max(MIN_MEASURED_COST, measuredCost);
+        costChanged();
+    }
+
+    private void costChanged() {
+        if (plan != null) {
+            plan.invalidateFingerprint();
+        }
+    }
+
+    /**
+     * @return the cost used to choose between paths : the declared estimate if any, otherwise the measured duration,
+     * otherwise {@link #DEFAULT_COST}.
+     */
+    public double getCost() {
+        if (estimatedCost != null) {
+            return estimatedCost;
+        } else if (measuredCost != null) {
+            return measuredCost;
+        } else {
+            return DEFAULT_COST;
+        }
+    }
+
+    /**
+     * @return the name of the group of rules this rule is independent from, or null. Consecutive steps of a path that
+     * belong to the same group may run concurrently.
+     */
+    public String getParallelGroup() {
+        return parallelGroup;
+    }
+
+    public void setParallelGroup(String parallelGroup) {
+        this.parallelGroup = parallelGroup;
+    }
+
+    /**
+     * @return the sql script run by this rule, or null if its action is not a script.
+     */
+    public URL getScript() {
+        return script;
+    }
+
+    public void setScript(URL script) {
+        this.script = script;
+    }
+
+    /**
+     * @return the SHA-256 of the script given by its {@link net.jr.deebee.scripts.ScriptIndex index}, or null if the
+     * script has to be hashed.
+     */
+    public String getScriptHash() {
+        return scriptHash;
+    }
+
+    public void setScriptHash(String scriptHash) {
+        this.scriptHash = scriptHash;
+    }
+
     public UpdatePlan getPlan() {
         return plan;
     }
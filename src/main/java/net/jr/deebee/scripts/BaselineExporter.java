@@ -0,0 +1,60 @@
+package net.jr.deebee.scripts;
+
+import com.github.zafarkhaja.semver.Version;
+import net.jr.deebee.UpdateFailureException;
+import net.jr.deebee.UpdatePlanBuilder;
+import net.jr.deebee.dao.Dao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Squashes the rules applied to a database into a baseline : a script named after {@link Script#baselineName(String)}
+ * that creates the schema and the data of the database at its current version. Once imported with the other scripts,
+ * it is a rule from {@link UpdatePlanBuilder#INITIAL_VERSION} to that version whose
+ * {@link net.jr.deebee.model.UpdateRule#BASELINE_COST cost} makes new databases skip the chain it replaces. The tables
+ * of deebee are left out, and the database is only read.
+ */
+public class BaselineExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BaselineExporter.class);
+
+    private final Dao dao;
+
+    public BaselineExporter(Dao dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * Writes the baseline of the current version of the database as <code>baseline_&lt;version&gt;.sql</code> in the
+     * given directory, replacing the previous baseline of that version if any. The script is written to a temporary
+     * file of the directory first and only moved in place once complete, so an export that fails leaves nothing behind.
+     *
+     * @return the baseline script
+     * @throws UpdateFailureException        when the database has not been updated yet, or has no table to export
+     * @throws UnsupportedOperationException when the dialect cannot export the database
+     */
+    public Path export(Path directory) throws Exception {
+        String version = dao.readCurrentVersion();
+        if (Version.valueOf(version).equals(Version.valueOf(UpdatePlanBuilder.INITIAL_VERSION))) {
+            throw new UpdateFailureException("the database has not been updated, there is nothing to squash");
+        }
+        Path script = directory.resolve(Script.baselineName(version));
+        Path tmp = directory.resolve(script.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                dao.exportBaseline(writer);
+            }
+            Files.move(tmp, script, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        LOGGER.info("baseline of version " + version + " written to " + script);
+        return script;
+    }
+}
@@ -0,0 +1,149 @@
+package net.jr.deebee.scripts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SHA-256 checksums of scripts, keyed by (location, size, last modification time) so that a script is only hashed again
+ * when it changes. The cache may be stored in a properties file, so that it survives restarts. It is safe to use from
+ * several threads.
+ */
+public class ChecksumCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumCache.class);
+
+    private final Path file;
+
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean dirty = false;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * creates a cache held in memory only
+     */
+    public ChecksumCache() {
+        this.file = null;
+    }
+
+    /**
+     * creates a cache stored in a file, loaded now if it exists. An unreadable file is ignored.
+     */
+    public ChecksumCache(Path file) {
+        this.file = file;
+        if (Files.isRegularFile(file)) {
+            Properties properties = new Properties();
+            try (InputStream is = Files.newInputStream(file)) {
+                properties.load(is);
+                for (String key : properties.stringPropertyNames()) {
+                    entries.put(key, properties.getProperty(key));
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.warn("ignoring checksum cache " + file, e);
+            }
+        }
+    }
+
+    private static String key(String location, long size, long lastModified) {
+        return location + "|" + size + "|" + lastModified;
+    }
+
+    /**
+     * @return the SHA-256 of the script, in hexadecimal
+     */
+    public String checksum(URL script) throws IOException {
+        if ("file".equals(script.getProtocol())) {
+            try {
+                return checksum(Paths.get(script.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        //for jar entries, the size is the one of the entry and the modification time the one of the jar
+        URLConnection connection = script.openConnection();
+        String location = script.toString();
+        String key = key(location, connection.getContentLengthLong(), connection.getLastModified());
+        String checksum = entries.get(key);
+        if (checksum != null) {
+            hits.incrementAndGet();
+            return checksum;
+        }
+        misses.incrementAndGet();
+        try (InputStream is = connection.getInputStream()) {
+            checksum = ScriptIndex.hash(is);
+        }
+        put(location, key, checksum);
+        return checksum;
+    }
+
+    public String checksum(Path script) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(script, BasicFileAttributes.class);
+        String location = script.toAbsolutePath().normalize().toString();
+        String key = key(location, attributes.size(), attributes.lastModifiedTime().toMillis());
+        String checksum = entries.get(key);
+        if (checksum != null) {
+            hits.incrementAndGet();
+            return checksum;
+        }
+        misses.incrementAndGet();
+        checksum = ScriptIndex.hash(script);
+        put(location, key, checksum);
+        return checksum;
+    }
+
+    private void put(String location, String key, String checksum) {
+        //forget the checksums of the previous versions of the script
+        entries.keySet().removeIf(k -> k.startsWith(location + "|"));
+        entries.put(key, checksum);
+        dirty = true;
+    }
+
+    /**
+     * writes the cache to its file, if it has one and has changed since it was loaded or saved.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null || !dirty) {
+            return;
+        }
+        dirty = false;
+        Properties properties = new Properties();
+        properties.putAll(entries);
+        //written next to the file then moved, so that a concurrent load never reads half of it
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                properties.store(os, "deebee checksums");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,110 @@
+package net.jr.deebee.scripts;
+
+import com.github.zafarkhaja.semver.Version;
+import net.jr.deebee.dao.Dao;
+import net.jr.deebee.model.ChecksumMismatch;
+import net.jr.deebee.model.DbUpdateStatus;
+import net.jr.deebee.model.UpdateGraph;
+import net.jr.deebee.model.UpdateRule;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the checksums recorded when the rules were applied with the current content of their scripts. The statuses
+ * are matched with the rules of the plan on their versions and the file name of their script, so that the scripts can
+ * be moved. Scripts are hashed only when their index does not give their hash, concurrently and through a
+ * {@link ChecksumCache}. The only access to the database is the read of the checksums.
+ */
+public class ChecksumVerifier {
+
+    private final Dao dao;
+
+    private final ChecksumCache checksumCache;
+
+    private final int parallelism;
+
+    /**
+     * @param parallelism the maximum number of scripts hashed at once
+     */
+    public ChecksumVerifier(Dao dao, ChecksumCache checksumCache, int parallelism) {
+        this.dao = dao;
+        this.checksumCache = checksumCache;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the applied rules whose script has changed or is missing from the graph, empty if there are none
+     */
+    public List<ChecksumMismatch> verify(UpdateGraph graph) throws Exception {
+
+        //the script rule of each applied status, null when there is none anymore
+        Map<DbUpdateStatus, UpdateRule> applied = new LinkedHashMap<>();
+        List<UpdateRule> unhashed = new ArrayList<>();
+        for (DbUpdateStatus status : dao.readChecksums()) {
+            UpdateRule match = null;
+            for (UpdateRule rule : graph.getRules(Version.valueOf(status.getFromVersion()), Version.valueOf(status.getToVersion()))) {
+                if (rule.getScript() != null && Objects.equals(scriptName(rule.getReference()), scriptName(status.getReference()))) {
+                    match = rule;
+                    break;
+                }
+            }
+            applied.put(status, match);
+            if (match != null && match.getScriptHash() == null) {
+                unhashed.add(match);
+            }
+        }
+
+        Map<String, Future<String>> checksums = new HashMap<>();
+        if (!unhashed.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(unhashed.size(), parallelism)));
+            try {
+                for (UpdateRule rule : unhashed) {
+                    URL script = rule.getScript();
+                    //urls are compared as strings, URL.equals() resolves host names
+                    checksums.computeIfAbsent(script.toString(), k -> executor.submit(() -> checksumCache.checksum(script)));
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        List<ChecksumMismatch> mismatches = new ArrayList<>();
+        for (Map.Entry<DbUpdateStatus, UpdateRule> entry : applied.entrySet()) {
+            UpdateRule rule = entry.getValue();
+            if (rule == null) {
+                mismatches.add(new ChecksumMismatch(entry.getKey(), null));
+                continue;
+            }
+            String checksum = rule.getScriptHash() != null ? rule.getScriptHash() : get(checksums.get(rule.getScript().toString()));
+            if (!checksum.equalsIgnoreCase(entry.getKey().getChecksum())) {
+                mismatches.add(new ChecksumMismatch(entry.getKey(), checksum));
+            }
+        }
+        return mismatches;
+    }
+
+    private static String get(Future<String> checksum) throws Exception {
+        try {
+            return checksum.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * @return the file name of the script of a reference, which is its path or its location in the classpath or a jar
+     */
+    private static String scriptName(String reference) {
+        return reference == null ? null : reference.substring(Math.max(reference.lastIndexOf('/'), reference.lastIndexOf('\\')) + 1);
+    }
+}
@@ -0,0 +1,117 @@
+package net.jr.deebee.scripts;
+
+import net.jr.deebee.UpdatePlanBuilder;
+
+import java.net.URL;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A sql script found by {@link ScriptDiscovery}. Its body is only read when the script is run.
+ * Scripts named after {@link #BASELINE_PATTERN} are baselines : they create a database at their version from scratch,
+ * see {@link net.jr.deebee.UpdateRunner#exportBaseline(java.nio.file.Path)}.
+ */
+public final class Script {
+
+    public static final String NAME_PATTERN = "^(.+)_to_(.+)\\.sql$";
+
+    public static final String BASELINE_PATTERN = "^baseline_(.+)\\.sql$";
+
+    private static final Pattern NAME_REGEX = Pattern.compile(NAME_PATTERN);
+
+    private static final Pattern BASELINE_REGEX = Pattern.compile(BASELINE_PATTERN);
+
+    private final String name;
+
+    private final String fromVersion;
+
+    private final String toVersion;
+
+    private final URL url;
+
+    private final long size;
+
+    private final String hash;
+
+    private final boolean baseline;
+
+    private Script(String name, String fromVersion, String toVersion, URL url, long size, String hash, boolean baseline) {
+        this.name = name;
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.url = url;
+        this.size = size;
+        this.hash = hash;
+        this.baseline = baseline;
+    }
+
+    /**
+     * @param size -1 if unknown
+     * @param hash may be null
+     * @return the script, or null if its name matches neither {@link #NAME_PATTERN} nor {@link #BASELINE_PATTERN}
+     */
+    public static Script of(String name, URL url, long size, String hash) {
+        Matcher matcher = NAME_REGEX.matcher(name);
+        if (matcher.matches()) {
+            return new Script(name, matcher.group(1), matcher.group(2), url, size, hash, false);
+        }
+        matcher = BASELINE_REGEX.matcher(name);
+        if (matcher.matches()) {
+            return new Script(name, UpdatePlanBuilder.INITIAL_VERSION, matcher.group(1), url, size, hash, true);
+        }
+        return null;
+    }
+
+    public static boolean isScriptName(String name) {
+        return NAME_REGEX.matcher(name).matches() || BASELINE_REGEX.matcher(name).matches();
+    }
+
+    /**
+     * @return the name of the baseline script of a version
+     */
+    public static String baselineName(String version) {
+        return "baseline_" + version + ".sql";
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFromVersion() {
+        return fromVersion;
+    }
+
+    public String getToVersion() {
+        return toVersion;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the size of the script in bytes, or -1 if unknown
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the SHA-256 of the script, in hexadecimal, or null if unknown
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return true if the script creates the database at its target version from scratch
+     */
+    public boolean isBaseline() {
+        return baseline;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
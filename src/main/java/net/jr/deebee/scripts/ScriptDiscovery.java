@@ -0,0 +1,145 @@
+package net.jr.deebee.scripts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the scripts of a directory, a jar or a classpath location. When a jar holds a {@link ScriptIndex}, only the index
+ * is read; otherwise the jar is scanned, which is much slower for large jars. Directories are always listed, as it is
+ * cheap, and their index only saves hashing the scripts.
+ */
+public final class ScriptDiscovery {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScriptDiscovery.class);
+
+    private ScriptDiscovery() {
+    }
+
+    /**
+     * Lists the scripts of a directory. When it holds an index, the scripts that have not changed since it was written
+     * get their hash from it. A stale index neither hides nor brings back scripts : the scripts it misses are found
+     * anyway, and its entries without a file are ignored, with a warning in both cases.
+     */
+    public static List<Script> fromDirectory(Path directory) throws IOException {
+        Path index = directory.resolve(ScriptIndex.FILE_NAME);
+        Map<String, Script> indexed = new HashMap<>();
+        FileTime indexedAt = null;
+        if (Files.isRegularFile(index)) {
+            for (Script script : ScriptIndex.read(index.toUri().toURL())) {
+                indexed.put(script.getName(), script);
+            }
+            indexedAt = Files.getLastModifiedTime(index);
+        }
+        List<Script> scripts = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*.sql")) {
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+                if (!Files.isRegularFile(path)) {
+                    continue;
+                }
+                long size = Files.size(path);
+                Script entry = indexed.remove(name);
+                String hash = null;
+                if (entry != null && entry.getSize() == size && Files.getLastModifiedTime(path).compareTo(indexedAt) <= 0) {
+                    hash = entry.getHash();
+                } else if (entry != null) {
+                    LOGGER.warn(name + " has changed since " + index + " was written");
+                } else if (indexedAt != null && Script.isScriptName(name)) {
+                    LOGGER.warn(name + " is missing from " + index);
+                }
+                Script script = Script.of(name, path.toUri().toURL(), size, hash);
+                if (script != null) {
+                    scripts.add(script);
+                } else {
+                    LOGGER.warn("invalid sql filename (expected pattern : \"" + Script.NAME_PATTERN + "\") : " + name);
+                }
+            }
+        }
+        for (String name : indexed.keySet()) {
+            LOGGER.warn(index + " lists " + name + ", which does not exist");
+        }
+        return scripts;
+    }
+
+    /**
+     * @param location a directory of the classpath, such as "db/migrations"
+     */
+    public static List<Script> fromClasspath(String location, ClassLoader classLoader) throws IOException {
+        String prefix = location.replaceAll("^/+|/+$", "");
+        URL index = classLoader.getResource(prefix + "/" + ScriptIndex.FILE_NAME);
+        if (index != null) {
+            return ScriptIndex.read(index);
+        }
+        URL directory = classLoader.getResource(prefix);
+        if (directory == null) {
+            throw new IOException("classpath location not found : " + location);
+        }
+        if ("file".equals(directory.getProtocol())) {
+            try {
+                return fromDirectory(Paths.get(directory.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        if ("jar".equals(directory.getProtocol())) {
+            JarURLConnection connection = (JarURLConnection) directory.openConnection();
+            connection.setUseCaches(false);
+            try (JarFile jar = connection.getJarFile()) {
+                return fromJar(jar, new URL(directory.toString().replaceAll("/*$", "/")), prefix);
+            }
+        }
+        throw new IOException("unsupported classpath location : " + directory);
+    }
+
+    /**
+     * @param location a directory of the jar, such as "db/migrations"
+     */
+    public static List<Script> fromJar(Path jarFile, String location) throws IOException {
+        String prefix = location.replaceAll("^/+|/+$", "");
+        URL base = new URL("jar:" + jarFile.toUri().toURL() + "!/" + prefix + "/");
+        try (JarFile jar = new JarFile(jarFile.toFile())) {
+            JarEntry index = jar.getJarEntry(prefix + "/" + ScriptIndex.FILE_NAME);
+            if (index != null) {
+                return ScriptIndex.read(new URL(base, ScriptIndex.FILE_NAME));
+            }
+            return fromJar(jar, base, prefix);
+        }
+    }
+
+    private static List<Script> fromJar(JarFile jar, URL base, String prefix) throws IOException {
+        LOGGER.warn("no " + ScriptIndex.FILE_NAME + " in " + base + ", scanning " + jar.getName());
+        List<Script> scripts = new ArrayList<>();
+        String directory = prefix + "/";
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String entryName = entry.getName();
+            if (entry.isDirectory() || !entryName.startsWith(directory) || entryName.indexOf('/', directory.length()) >= 0) {
+                continue;
+            }
+            String name = entryName.substring(directory.length());
+            Script script = Script.of(name, new URL(base, name), entry.getSize(), null);
+            if (script != null) {
+                scripts.add(script);
+            }
+        }
+        return scripts;
+    }
+}
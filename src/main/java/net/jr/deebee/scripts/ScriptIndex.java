@@ -0,0 +1,118 @@
+package net.jr.deebee.scripts;
+
+import net.jr.deebee.util.Sha256;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Index of the scripts of a location, generated at build time so that startup neither lists directories nor scans jars.
+ * It is a properties file named {@value #FILE_NAME}, stored next to the scripts, with one entry per script :
+ * <pre>0.0.0_to_1.0.0.sql=0.0.0,1.0.0,1234,&lt;sha-256&gt;</pre>
+ * Generate it with <code>java -cp deebee.jar net.jr.deebee.scripts.ScriptIndex &lt;directory&gt;...</code>, for example
+ * from the process-resources phase with the exec-maven-plugin. Like the rest of deebee, it reports through slf4j.
+ */
+public final class ScriptIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScriptIndex.class);
+
+    public static final String FILE_NAME = "deebee-index.properties";
+
+    private ScriptIndex() {
+    }
+
+    /**
+     * @return the scripts listed by the index, their urls resolved against the url of the index
+     * @throws IOException if an entry is not a script, or its versions are not those of its name
+     */
+    public static List<Script> read(URL index) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream is = index.openStream()) {
+            properties.load(is);
+        }
+        List<Script> scripts = new ArrayList<>(properties.size());
+        for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+            String[] values = properties.getProperty(name).split(",");
+            Script script = Script.of(name, new URL(index, name),
+                    values.length > 2 ? Long.parseLong(values[2].trim()) : -1,
+                    values.length > 3 ? values[3].trim() : null);
+            if (script == null) {
+                throw new IOException("invalid script name in " + index + " : " + name);
+            }
+            if (values.length < 2 || !values[0].trim().equals(script.getFromVersion()) || !values[1].trim().equals(script.getToVersion())) {
+                throw new IOException("invalid entry in " + index + " : " + name + " goes from " + script.getFromVersion() + " to " + script.getToVersion() + ", not " + properties.getProperty(name));
+            }
+            scripts.add(script);
+        }
+        return scripts;
+    }
+
+    /**
+     * writes the index of the scripts of a directory, in that directory.
+     *
+     * @return the indexed scripts
+     */
+    public static List<Script> write(Path directory) throws IOException {
+        Properties properties = new Properties();
+        List<Script> scripts = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*.sql")) {
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+                if (!Script.isScriptName(name) || !Files.isRegularFile(path)) {
+                    continue;
+                }
+                Script script = Script.of(name, path.toUri().toURL(), Files.size(path), hash(path));
+                properties.setProperty(name, script.getFromVersion() + "," + script.getToVersion() + "," + script.getSize() + "," + script.getHash());
+                scripts.add(script);
+            }
+        }
+        try (OutputStream os = Files.newOutputStream(directory.resolve(FILE_NAME))) {
+            properties.store(os, "deebee scripts index");
+        }
+        return scripts;
+    }
+
+    /**
+     * @return the SHA-256 of a file, in hexadecimal
+     */
+    public static String hash(Path path) throws IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            return hash(is);
+        }
+    }
+
+    /**
+     * @return the SHA-256 of what is left in the stream, in hexadecimal. The stream is not closed.
+     */
+    public static String hash(InputStream is) throws IOException {
+        MessageDigest digest = Sha256.newDigest();
+        byte[] buffer = new byte[65536];
+        int n;
+        while ((n = is.read(buffer)) > 0) {
+            digest.update(buffer, 0, n);
+        }
+        return Sha256.toHex(digest.digest());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            LOGGER.error("usage : ScriptIndex <directory>...");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            List<Script> scripts = write(Paths.get(arg));
+            LOGGER.info(arg + " : " + scripts.size() + " scripts indexed");
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package net.jr.deebee.util.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class ActionExecutors {
+
+    private ActionExecutors() {
+    }
+
+    /**
+     * @return an executor that starts a virtual thread per task when the runtime supports them (java 21+), or a pool of
+     * at most maxThreads platform threads otherwise.
+     */
+    public static ExecutorService newDefault(int maxThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(maxThreads);
+        }
+    }
+}
@@ -4,27 +4,184 @@ import java.util.*;
 
 public abstract class AStarPathFinder<NodeType> {
 
+    public enum Mode {
+        /**
+         * A* search, guided by {@link #heuristicCostEstimate(Object, Object)}.
+         */
+        ASTAR,
+        /**
+         * plain Dijkstra search, the heuristic is not used.
+         */
+        DIJKSTRA,
+        /**
+         * Dijkstra search run from both ends at once. Requires {@link #getPredecessors(Object)} and an actual goal node.
+         */
+        BIDIRECTIONAL
+    }
+
     private class SearchNode {
-        private NodeType data;
+        private final NodeType data;
+        private final int order;
         private double gscore = Double.POSITIVE_INFINITY;
         private double fscore = Double.POSITIVE_INFINITY;
         private boolean closed = false;
-        private boolean outOpenSet = true;
+        private int heapIndex = -1;
         private SearchNode cameFrom = null;
+
+        private SearchNode(NodeType data, int order) {
+            this.data = data;
+            this.order = order;
+        }
+    }
+
+    /**
+     * binary heap of search nodes ordered by fscore, where each node knows its position so that its priority can be
+     * decreased in place. Ties are broken by discovery order, which keeps the search deterministic.
+     */
+    private class OpenSet {
+
+        private Object[] heap = new Object[16];
+
+        private int size = 0;
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private SearchNode get(int i) {
+            return (SearchNode) heap[i];
+        }
+
+        private SearchNode peek() {
+            return get(0);
+        }
+
+        private boolean less(SearchNode a, SearchNode b) {
+            int c = Double.compare(a.fscore, b.fscore);
+            return c < 0 || (c == 0 && a.order < b.order);
+        }
+
+        private void set(int i, SearchNode n) {
+            heap[i] = n;
+            n.heapIndex = i;
+        }
+
+        private void insertOrUpdate(SearchNode n) {
+            if (n.heapIndex < 0) {
+                if (size == heap.length) {
+                    heap = Arrays.copyOf(heap, size * 2);
+                }
+                set(size, n);
+                size++;
+            }
+            siftUp(n.heapIndex);
+        }
+
+        private SearchNode poll() {
+            SearchNode top = get(0);
+            size--;
+            if (size > 0) {
+                set(0, get(size));
+                siftDown(0);
+            }
+            heap[size] = null;
+            top.heapIndex = -1;
+            return top;
+        }
+
+        private void siftUp(int i) {
+            SearchNode n = get(i);
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                SearchNode p = get(parent);
+                if (!less(n, p)) {
+                    break;
+                }
+                set(i, p);
+                i = parent;
+            }
+            set(i, n);
+        }
+
+        private void siftDown(int i) {
+            SearchNode n = get(i);
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && less(get(right), get(child))) {
+                    child = right;
+                }
+                if (!less(get(child), n)) {
+                    break;
+                }
+                set(i, get(child));
+                i = child;
+            }
+            set(i, n);
+        }
+    }
+
+    /**
+     * search state for one direction.
+     */
+    private class Search {
+
+        private final Map<NodeType, SearchNode> searchNodes = new HashMap<>();
+
+        private final OpenSet openSet = new OpenSet();
+
+        private SearchNode get(NodeType data) {
+            SearchNode sn = searchNodes.get(data);
+            if (sn == null) {
+                sn = new SearchNode(data, searchNodes.size());
+                searchNodes.put(data, sn);
+            }
+            return sn;
+        }
+
+        private void start(NodeType start, double fscore) {
+            SearchNode startNode = get(start);
+            startNode.gscore = 0;
+            startNode.fscore = fscore;
+            openSet.insertOrUpdate(startNode);
+        }
+    }
+
+    private Mode mode = Mode.ASTAR;
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public AStarPathFinder<NodeType> setMode(Mode mode) {
+        this.mode = mode;
+        return this;
     }
 
     public double distanceBetween(NodeType n1, NodeType n2) {
         return 1.0;
     }
 
+    /**
+     * must never overestimate the actual cost from current to goal, otherwise the returned path may not be the shortest.
+     */
     public double heuristicCostEstimate(NodeType current, NodeType goal) {
-        return Double.POSITIVE_INFINITY;
+        return 0.0;
     }
 
     public abstract Iterable<NodeType> getNeighbors(NodeType n);
 
+    /**
+     * the nodes that have n as a neighbor, only needed by the {@link Mode#BIDIRECTIONAL} mode.
+     */
+    public Iterable<NodeType> getPredecessors(NodeType n) {
+        throw new UnsupportedOperationException("predecessors are needed for a bidirectional search");
+    }
+
     public boolean isGoalReached(NodeType current, NodeType goal) {
-        return current == goal;
+        return Objects.equals(current, goal);
     }
 
     private List<NodeType> reconstructPath(SearchNode searchNode) {
@@ -48,34 +205,26 @@ public abstract class AStarPathFinder<NodeType> {
             return Arrays.asList(start);
         }
 
-        Map<NodeType, SearchNode> searchNodes = new HashMap<NodeType, SearchNode>() {
-            @Override
-            public SearchNode get(Object key) {
-                if (containsKey(key)) {
-                    return super.get(key);
-                } else {
-                    SearchNode sn = new SearchNode();
-                    sn.data = (NodeType) key;
-                    put((NodeType) key, sn);
-                    return sn;
-                }
+        if (mode == Mode.BIDIRECTIONAL) {
+            if (goal == null) {
+                throw new IllegalArgumentException("a bidirectional search needs a goal node");
             }
-        };
-        SearchNode startNode = searchNodes.get(start);
-        startNode.data = start;
-        startNode.gscore = 0;
-        startNode.fscore = heuristicCostEstimate(start, goal);
-        PriorityQueue<SearchNode> openSet = new PriorityQueue<>(10, (o1, o2) -> (int) (o1.fscore - o2.fscore));
-        openSet.add(startNode);
+            return findBidirectional(start, goal);
+        }
+
+        boolean useHeuristic = mode == Mode.ASTAR;
+        Search search = new Search();
+        search.start(start, useHeuristic ? heuristicCostEstimate(start, goal) : 0.0);
+        OpenSet openSet = search.openSet;
+
         while (!openSet.isEmpty()) {
-            SearchNode current = openSet.remove();
+            SearchNode current = openSet.poll();
             if (isGoalReached(current.data, goal)) {
                 return reconstructPath(current);
             }
-            current.outOpenSet = true;
             current.closed = true;
             for (NodeType n : getNeighbors(current.data)) {
-                SearchNode neighbor = searchNodes.get(n);
+                SearchNode neighbor = search.get(n);
                 if (neighbor.closed) {
                     continue;
                 }
@@ -85,13 +234,68 @@ public abstract class AStarPathFinder<NodeType> {
                 }
                 neighbor.cameFrom = current;
                 neighbor.gscore = tentativeGScore;
-                neighbor.fscore = tentativeGScore + heuristicCostEstimate(neighbor.data, goal);
-                if (neighbor.outOpenSet) {
-                    neighbor.outOpenSet = false;
-                    openSet.add(neighbor);
-                }
+                neighbor.fscore = useHeuristic ? tentativeGScore + heuristicCostEstimate(neighbor.data, goal) : tentativeGScore;
+                openSet.insertOrUpdate(neighbor);
             }
         }
         return null;
     }
+
+    private List<NodeType> findBidirectional(NodeType start, NodeType goal) {
+        Search forward = new Search();
+        Search backward = new Search();
+        forward.start(start, 0.0);
+        backward.start(goal, 0.0);
+
+        double best = Double.POSITIVE_INFINITY;
+        NodeType meeting = null;
+
+        while (!forward.openSet.isEmpty() && !backward.openSet.isEmpty()) {
+
+            double forwardTop = forward.openSet.peek().gscore;
+            double backwardTop = backward.openSet.peek().gscore;
+            if (forwardTop + backwardTop >= best) {
+                break;
+            }
+
+            boolean isForward = forwardTop <= backwardTop;
+            Search search = isForward ? forward : backward;
+            Search other = isForward ? backward : forward;
+
+            SearchNode current = search.openSet.poll();
+            current.closed = true;
+
+            for (NodeType n : isForward ? getNeighbors(current.data) : getPredecessors(current.data)) {
+                SearchNode neighbor = search.get(n);
+                if (neighbor.closed) {
+                    continue;
+                }
+                double distance = isForward ? distanceBetween(current.data, n) : distanceBetween(n, current.data);
+                double tentativeGScore = current.gscore + distance;
+                if (tentativeGScore < neighbor.gscore) {
+                    neighbor.cameFrom = current;
+                    neighbor.gscore = tentativeGScore;
+                    neighbor.fscore = tentativeGScore;
+                    search.openSet.insertOrUpdate(neighbor);
+                }
+                SearchNode reached = other.searchNodes.get(n);
+                if (reached != null && neighbor.gscore + reached.gscore < best) {
+                    best = neighbor.gscore + reached.gscore;
+                    meeting = n;
+                }
+            }
+        }
+
+        if (meeting == null) {
+            return null;
+        }
+
+        List<NodeType> path = reconstructPath(forward.searchNodes.get(meeting));
+        SearchNode current = backward.searchNodes.get(meeting).cameFrom;
+        while (current != null) {
+            path.add(current.data);
+            current = current.cameFrom;
+        }
+        return path;
+    }
 }
@@ -0,0 +1,37 @@
+package net.jr.deebee.util.sql;
+
+/**
+ * Outcome of {@link NamedPreparedStatement#executeBatch(Iterable, ParameterBinder, int)}.
+ */
+public class BatchResult {
+
+    private static final long[] NO_KEYS = new long[]{};
+
+    private final int[] updateCounts;
+
+    private final long[] generatedKeys;
+
+    public BatchResult(int[] updateCounts, long[] generatedKeys) {
+        this.updateCounts = updateCounts;
+        this.generatedKeys = generatedKeys == null ? NO_KEYS : generatedKeys;
+    }
+
+    /**
+     * @return the update count of each row, in order
+     */
+    public int[] getUpdateCounts() {
+        return updateCounts;
+    }
+
+    /**
+     * @return the keys generated for the rows, when the statement was created with {@link java.sql.Statement#RETURN_GENERATED_KEYS}
+     * and the driver reports them for batches
+     */
+    public long[] getGeneratedKeys() {
+        return generatedKeys;
+    }
+
+    public int getRowCount() {
+        return updateCounts.length;
+    }
+}
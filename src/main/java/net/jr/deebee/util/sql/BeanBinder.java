@@ -0,0 +1,164 @@
+package net.jr.deebee.util.sql;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binds the properties of a bean to the named parameters that have the same name.
+ * The getters of a class are looked up once and turned into method handles, and {@link #compile(NamedPreparedStatement)}
+ * resolves the parameter positions once per statement, so that binding a row neither uses reflection nor allocates maps.
+ * Null values are bound with the sql type of their getter, as some drivers reject untyped nulls.
+ */
+public final class BeanBinder<T> {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<BeanBinder<?>> BINDERS = new ClassValue<BeanBinder<?>>() {
+        @Override
+        protected BeanBinder<?> computeValue(Class<?> type) {
+            return new BeanBinder<>(type);
+        }
+    };
+
+    private final Class<T> type;
+
+    private final Map<String, MethodHandle> getters;
+
+    private final Map<String, Integer> sqlTypes;
+
+    private BeanBinder(Class<T> type) {
+        this.type = type;
+        Map<String, MethodHandle> handles = new TreeMap<>();
+        Map<String, Integer> types = new TreeMap<>();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            for (PropertyDescriptor pd : Introspector.getBeanInfo(type, Object.class).getPropertyDescriptors()) {
+                if (pd.getReadMethod() != null) {
+                    handles.put(pd.getName(), lookup.unreflect(pd.getReadMethod()).asType(GETTER_TYPE));
+                    types.put(pd.getName(), sqlType(pd.getPropertyType()));
+                }
+            }
+        } catch (IntrospectionException | IllegalAccessException e) {
+            throw new IllegalArgumentException("cannot bind properties of " + type.getName(), e);
+        }
+        this.getters = Collections.unmodifiableMap(handles);
+        this.sqlTypes = Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * @return the sql type a null value of the given java type is bound with
+     */
+    static int sqlType(Class<?> javaType) {
+        if (javaType == String.class) {
+            return Types.VARCHAR;
+        } else if (javaType == Long.class || javaType == long.class) {
+            return Types.BIGINT;
+        } else if (javaType == Integer.class || javaType == int.class) {
+            return Types.INTEGER;
+        } else if (javaType == Short.class || javaType == short.class) {
+            return Types.SMALLINT;
+        } else if (javaType == Byte.class || javaType == byte.class) {
+            return Types.TINYINT;
+        } else if (javaType == Boolean.class || javaType == boolean.class) {
+            return Types.BOOLEAN;
+        } else if (javaType == Double.class || javaType == double.class) {
+            return Types.DOUBLE;
+        } else if (javaType == Float.class || javaType == float.class) {
+            return Types.REAL;
+        } else if (javaType == BigDecimal.class) {
+            return Types.NUMERIC;
+        } else if (javaType == java.sql.Date.class) {
+            return Types.DATE;
+        } else if (javaType == java.sql.Time.class) {
+            return Types.TIME;
+        } else if (java.util.Date.class.isAssignableFrom(javaType)) {
+            return Types.TIMESTAMP;
+        } else if (javaType == byte[].class) {
+            return Types.VARBINARY;
+        }
+        return Types.OTHER;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> BeanBinder<T> of(Class<T> type) {
+        return (BeanBinder<T>) BINDERS.get(type);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return a binder for the given statement, that only reads the properties used by its parameters.
+     */
+    public ParameterBinder<T> compile(NamedPreparedStatement statement) {
+        List<MethodHandle> handles = new ArrayList<>();
+        List<int[]> positions = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        for (Map.Entry<String, MethodHandle> getter : getters.entrySet()) {
+            int[] p = statement.positionsOf(getter.getKey());
+            if (p != null) {
+                handles.add(getter.getValue());
+                positions.add(p);
+                types.add(sqlTypes.get(getter.getKey()));
+            }
+        }
+        int[] nullTypes = new int[types.size()];
+        for (int i = 0; i < nullTypes.length; i++) {
+            nullTypes[i] = types.get(i);
+        }
+        return new Compiled<>(handles.toArray(new MethodHandle[0]), positions.toArray(new int[0][]), nullTypes);
+    }
+
+    private static final class Compiled<T> implements ParameterBinder<T> {
+
+        private final MethodHandle[] getters;
+
+        private final int[][] positions;
+
+        private final int[] nullTypes;
+
+        private Compiled(MethodHandle[] getters, int[][] positions, int[] nullTypes) {
+            this.getters = getters;
+            this.positions = positions;
+            this.nullTypes = nullTypes;
+        }
+
+        @Override
+        public void bind(NamedPreparedStatement statement, T row) throws SQLException {
+            for (int i = 0; i < getters.length; i++) {
+                Object value;
+                try {
+                    value = (Object) getters[i].invokeExact((Object) row);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new SQLException(t);
+                }
+                if (value instanceof java.util.Date && !(value instanceof java.sql.Date || value instanceof java.sql.Time || value instanceof Timestamp)) {
+                    value = new Timestamp(((java.util.Date) value).getTime());
+                }
+                for (int position : positions[i]) {
+                    if (value == null) {
+                        statement.setNull(position, nullTypes[i]);
+                    } else {
+                        statement.setObject(position, value);
+                    }
+                }
+            }
+        }
+    }
+}
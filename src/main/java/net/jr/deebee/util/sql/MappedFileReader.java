@@ -0,0 +1,134 @@
+package net.jr.deebee.util.sql;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an UTF-8 file by mapping it in memory one window at a time and decoding the mapped bytes straight into the
+ * buffer of the caller, so that large scripts are neither copied on the heap nor read through a stream. A leading byte
+ * order mark is skipped, bytes that are not UTF-8 fail the read with their offset in the file.
+ */
+public class MappedFileReader extends Reader {
+
+    private static final int DEFAULT_WINDOW_SIZE = 32 * 1024 * 1024;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int windowSize;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    private MappedByteBuffer window;
+
+    private long windowOffset;
+
+    private boolean eof = false;
+
+    //the low surrogate of a character that did not fit in the buffer of the caller
+    private int pending = -1;
+
+    private final CharBuffer pair = CharBuffer.allocate(2);
+
+    public MappedFileReader(Path file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize the number of bytes mapped at once
+     */
+    public MappedFileReader(Path file, int windowSize) throws IOException {
+        if (windowSize < 4) {
+            throw new IllegalArgumentException("windowSize");
+        }
+        this.windowSize = windowSize;
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            map(0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (window.remaining() >= 3 && (window.get(0) & 0xff) == 0xef && (window.get(1) & 0xff) == 0xbb && (window.get(2) & 0xff) == 0xbf) {
+            window.position(3);
+        }
+    }
+
+    private void map(long offset) throws IOException {
+        windowOffset = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, size - offset));
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (pending >= 0) {
+            cbuf[off] = (char) pending;
+            pending = -1;
+            return 1;
+        }
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.position() == off && !eof) {
+            boolean last = windowOffset + window.limit() >= size;
+            CoderResult result = decoder.decode(window, out, last);
+            if (result.isOverflow() && out.position() == off) {
+                //a surrogate pair cannot be decoded into a single char
+                pair.clear();
+                result = decoder.decode(window, pair, last);
+                pair.flip();
+                if (pair.hasRemaining()) {
+                    out.put(pair.get());
+                    if (pair.hasRemaining()) {
+                        pending = pair.get();
+                    }
+                }
+            }
+            if (result.isError()) {
+                try {
+                    result.throwException();
+                } catch (CharacterCodingException e) {
+                    throw new IOException("invalid UTF-8 at byte " + (windowOffset + window.position()) + " of " + file, e);
+                }
+            }
+            if (result.isUnderflow()) {
+                if (last) {
+                    decoder.flush(out);
+                    eof = true;
+                } else {
+                    //the bytes left in the window, if any, are the beginning of a character that continues in the next one
+                    map(windowOffset + window.position());
+                }
+            }
+        }
+        int count = out.position() - off;
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -7,16 +7,82 @@ import java.net.URL;
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 public class NamedPreparedStatement implements PreparedStatement {
 
     private static final int[] EMPTY_INT_ARRAY = new int[]{};
 
+    private static final int DEFAULT_PARSE_CACHE_SIZE = 256;
+
     private static class ParsedQuery {
-        private String query;
-        private Map<String, int[]> params;
+        private final String query;
+        private final Map<String, int[]> params;
+
+        private ParsedQuery(String query, Map<String, int[]> params) {
+            this.query = query;
+            this.params = params;
+        }
+    }
+
+    /**
+     * bounded LRU cache of parsed queries, shared by all the statements.
+     */
+    private static class ParseCache {
+
+        private volatile int maxSize = DEFAULT_PARSE_CACHE_SIZE;
+
+        private final AtomicLong hits = new AtomicLong();
+
+        private final AtomicLong misses = new AtomicLong();
+
+        private final LinkedHashMap<String, ParsedQuery> entries = new LinkedHashMap<String, ParsedQuery>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ParsedQuery> eldest) {
+                return size() > maxSize;
+            }
+        };
+
+        private ParsedQuery get(String query) {
+            ParsedQuery p;
+            synchronized (this) {
+                p = entries.get(query);
+            }
+            if (p != null) {
+                hits.incrementAndGet();
+                return p;
+            }
+            misses.incrementAndGet();
+            p = parse(query.trim());
+            if (maxSize > 0) {
+                synchronized (this) {
+                    entries.put(query, p);
+                }
+            }
+            return p;
+        }
+
+        private synchronized void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            Iterator<String> it = entries.keySet().iterator();
+            while (entries.size() > maxSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            hits.set(0);
+            misses.set(0);
+        }
     }
 
+    private static final ParseCache parseCache = new ParseCache();
+
     private String originalQuery;
 
     private PreparedStatement preparedStatement;
@@ -25,20 +91,45 @@ public class NamedPreparedStatement implements PreparedStatement {
 
     private boolean allowMissingParameters = true;
 
-    private NamedPreparedStatement(PreparedStatement preparedStatement, ParsedQuery parsedQuery, String originalQuery) {
+    private final boolean returnGeneratedKeys;
+
+    private NamedPreparedStatement(PreparedStatement preparedStatement, ParsedQuery parsedQuery, String originalQuery, boolean returnGeneratedKeys) {
         this.preparedStatement = preparedStatement;
         this.parsedQuery = parsedQuery;
         this.originalQuery = originalQuery;
+        this.returnGeneratedKeys = returnGeneratedKeys;
     }
 
     public static NamedPreparedStatement create(Connection connection, String query) throws SQLException {
-        ParsedQuery p = parse(query.trim());
-        return new NamedPreparedStatement(connection.prepareStatement(p.query), p, query);
+        ParsedQuery p = parseCache.get(query);
+        return new NamedPreparedStatement(connection.prepareStatement(p.query), p, query, false);
     }
 
     public static NamedPreparedStatement create(Connection connection, String query, int options) throws SQLException {
-        ParsedQuery p = parse(query.trim());
-        return new NamedPreparedStatement(connection.prepareStatement(p.query, options), p, query);
+        ParsedQuery p = parseCache.get(query);
+        return new NamedPreparedStatement(connection.prepareStatement(p.query, options), p, query, options == Statement.RETURN_GENERATED_KEYS);
+    }
+
+    /**
+     * Sets the maximum number of parsed queries kept in the cache shared by all statements, 0 disables the cache.
+     */
+    public static void setParseCacheSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize");
+        }
+        parseCache.setMaxSize(maxSize);
+    }
+
+    public static long getParseCacheHits() {
+        return parseCache.hits.get();
+    }
+
+    public static long getParseCacheMisses() {
+        return parseCache.misses.get();
+    }
+
+    public static void clearParseCache() {
+        parseCache.clear();
     }
 
     public void setAllowMissingParameters(boolean allowMissingParameters) {
@@ -49,12 +140,12 @@ public class NamedPreparedStatement implements PreparedStatement {
         return allowMissingParameters;
     }
 
-    private static final ParsedQuery parse(String query) {
+    private static ParsedQuery parse(String query) {
 
-        Map<String, List<Integer>> paramMap = new TreeMap<>();
+        Map<String, int[]> params = new HashMap<>();
 
         int length = query.length();
-        StringBuffer parsedQuery = new StringBuffer(length);
+        StringBuilder parsedQuery = new StringBuilder(length);
         boolean inSingleQuote = false;
         boolean inDoubleQuote = false;
         int index = 1;
@@ -82,14 +173,17 @@ public class NamedPreparedStatement implements PreparedStatement {
                     }
                     String name = query.substring(i + 1, j);
                     c = '?'; // replace the parameter with a question mark
-                    i += name.length(); // skip past the end if the parameter
-
-                    List<Integer> indexList = paramMap.get(name);
-                    if (indexList == null) {
-                        indexList = new ArrayList<>();
-                        paramMap.put(name, indexList);
+                    i = j - 1; // skip past the end if the parameter
+
+                    // positions arrays grow by one, parameters are rarely used more than a couple of times
+                    int[] positions = params.get(name);
+                    if (positions == null) {
+                        positions = new int[]{index};
+                    } else {
+                        positions = Arrays.copyOf(positions, positions.length + 1);
+                        positions[positions.length - 1] = index;
                     }
-                    indexList.add(new Integer(index));
+                    params.put(name, positions);
 
                     index++;
                 }
@@ -97,21 +191,20 @@ public class NamedPreparedStatement implements PreparedStatement {
             parsedQuery.append(c);
         }
 
-        ParsedQuery p = new ParsedQuery();
-        p.query = parsedQuery.toString();
-        p.params = new TreeMap<>();
-
-        // replace the lists of Integer objects with arrays of ints
-        paramMap.entrySet().stream().forEach(entry -> {
-            p.params.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
-        });
+        return new ParsedQuery(parsedQuery.toString(), Collections.unmodifiableMap(params));
+    }
 
-        return p;
+    /**
+     * @return the positions of a named parameter, or null if the query does not use it.
+     */
+    int[] positionsOf(String param) {
+        return parsedQuery.params.get(param);
     }
 
     private int[] getPositions(String param) {
-        if (parsedQuery.params.containsKey(param)) {
-            return parsedQuery.params.get(param);
+        int[] positions = parsedQuery.params.get(param);
+        if (positions != null) {
+            return positions;
         } else {
 
             if (allowMissingParameters) {
@@ -738,6 +831,56 @@ public class NamedPreparedStatement implements PreparedStatement {
         }
     }
 
+    /**
+     * Binds each map by parameter name and executes the statement in batches of batchSize rows.
+     */
+    public BatchResult executeBatch(Iterable<? extends Map<String, ?>> rows, int batchSize) throws SQLException {
+        return executeBatch(rows, NamedPreparedStatement::setParameters, batchSize);
+    }
+
+    public <T> BatchResult executeBatch(Stream<T> rows, ParameterBinder<? super T> binder, int batchSize) throws SQLException {
+        return executeBatch(rows::iterator, binder, batchSize);
+    }
+
+    /**
+     * Binds each row with the given binder and executes the statement in batches of batchSize rows.
+     * Parameters are cleared before each row, so values are never carried over from the previous one.
+     */
+    public <T> BatchResult executeBatch(Iterable<T> rows, ParameterBinder<? super T> binder, int batchSize) throws SQLException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize");
+        }
+        IntStream.Builder updateCounts = IntStream.builder();
+        LongStream.Builder generatedKeys = returnGeneratedKeys ? LongStream.builder() : null;
+        int pending = 0;
+        for (T row : rows) {
+            preparedStatement.clearParameters();
+            binder.bind(this, row);
+            preparedStatement.addBatch();
+            if (++pending == batchSize) {
+                flushBatch(updateCounts, generatedKeys);
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            flushBatch(updateCounts, generatedKeys);
+        }
+        return new BatchResult(updateCounts.build().toArray(), generatedKeys == null ? null : generatedKeys.build().toArray());
+    }
+
+    private void flushBatch(IntStream.Builder updateCounts, LongStream.Builder generatedKeys) throws SQLException {
+        for (int count : preparedStatement.executeBatch()) {
+            updateCounts.add(count);
+        }
+        if (generatedKeys != null) {
+            try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+                while (rs.next()) {
+                    generatedKeys.add(rs.getLong(1));
+                }
+            }
+        }
+    }
+
     public long getUniqueGeneratedKey() throws SQLException {
         ResultSet rs = getGeneratedKeys();
         try {
@@ -0,0 +1,13 @@
+package net.jr.deebee.util.sql;
+
+import java.sql.SQLException;
+
+/**
+ * Binds the values of one row (a bean, a map, ...) to the named parameters of a statement.
+ */
+@FunctionalInterface
+public interface ParameterBinder<T> {
+
+    void bind(NamedPreparedStatement statement, T row) throws SQLException;
+
+}
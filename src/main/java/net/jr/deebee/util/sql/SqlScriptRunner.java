@@ -1,14 +1,26 @@
 package net.jr.deebee.util.sql;
 
+import net.jr.deebee.metrics.MetricsRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
-import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
 import java.util.concurrent.Callable;
+import java.util.stream.IntStream;
 
 public class SqlScriptRunner {
 
@@ -16,6 +28,14 @@ public class SqlScriptRunner {
 
     private Callable<Connection> connectionProvider;
 
+    private int batchSize = 0;
+
+    private boolean backslashEscapes = false;
+
+    private boolean nestedComments = false;
+
+    private MetricsRecorder metrics = MetricsRecorder.NONE;
+
     public SqlScriptRunner(Connection connection) {
         this(() -> connection);
     }
@@ -28,6 +48,43 @@ public class SqlScriptRunner {
         this.connectionProvider = callable;
     }
 
+    /**
+     * When greater than 1, consecutive DML statements (insert, update, delete, merge) are sent in JDBC batches of at
+     * most batchSize statements. Any other statement flushes the pending batch and is executed on its own.
+     */
+    public SqlScriptRunner setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * see {@link SqlStatementReader#setBackslashEscapes(boolean)}
+     */
+    public SqlScriptRunner setBackslashEscapes(boolean backslashEscapes) {
+        this.backslashEscapes = backslashEscapes;
+        return this;
+    }
+
+    /**
+     * see {@link SqlStatementReader#setNestedComments(boolean)}
+     */
+    public SqlScriptRunner setNestedComments(boolean nestedComments) {
+        this.nestedComments = nestedComments;
+        return this;
+    }
+
+    /**
+     * receives the duration of the script and of each of its statements or batches, with the affected row counts.
+     */
+    public SqlScriptRunner setMetrics(MetricsRecorder metrics) {
+        this.metrics = metrics == null ? MetricsRecorder.NONE : metrics;
+        return this;
+    }
+
     private Connection getConnection() throws Exception {
         return connectionProvider.call();
     }
@@ -36,13 +93,19 @@ public class SqlScriptRunner {
         void doInTransaction(Connection connection) throws SQLException;
     }
 
+    /**
+     * runs fn in a transaction of its own, or in the transaction of the caller when the connection is not in autocommit
+     * mode : in that case committing or rolling back is left to the caller.
+     */
     private void doInTransaction(TransactionCallback fn) throws Exception {
         Connection cnx = getConnection();
         boolean autoCommit = cnx.getAutoCommit();
+        if (!autoCommit) {
+            fn.doInTransaction(cnx);
+            return;
+        }
         try {
-            if (autoCommit) {
-                cnx.setAutoCommit(false);
-            }
+            cnx.setAutoCommit(false);
             fn.doInTransaction(cnx);
             cnx.commit();
         } catch (SQLException e) {
@@ -51,39 +114,144 @@ public class SqlScriptRunner {
             throw new SQLException(e);
         } finally {
             cnx.rollback();
-            if (autoCommit) {
-                cnx.setAutoCommit(true);
-            }
+            cnx.setAutoCommit(true);
         }
     }
 
-    public void run(String scriptName, Reader script) {
+    /**
+     * @return the update count of each statement of the script, in order. Statements that produced a result set are
+     * reported as -1, batched statements may be reported as {@link Statement#SUCCESS_NO_INFO} depending on the driver.
+     */
+    public int[] run(String scriptName, Reader script) {
 
         try {
 
             LOGGER.info("Applying " + scriptName+" ...");
 
-            //read script
-            CharArrayWriter cw = new CharArrayWriter();
-            char[] buffer = new char[512];
-            int r;
-            while ((r = script.read(buffer)) > -1) {
-                cw.write(buffer, 0, r);
-            }
-            script.close();
+            IntStream.Builder updateCounts = IntStream.builder();
+            long start = System.nanoTime();
 
-            //run all statements in a transaction
-            doInTransaction((connection) -> {
-                for (String cmd : cw.toString().split(";")) {
-                    connection.createStatement().execute(cmd.trim());
-                }
-            });
+            //statements are read one at a time while the transaction runs, so the script is never fully loaded
+            try (SqlStatementReader statements = new SqlStatementReader(script)
+                    .setBackslashEscapes(backslashEscapes).setNestedComments(nestedComments)) {
+                doInTransaction((connection) -> {
+                    try {
+                        executeStatements(scriptName, connection, statements, updateCounts);
+                    } catch (IOException e) {
+                        throw new SQLException(e);
+                    }
+                });
+            }
 
+            metrics.recordTime(MetricsRecorder.SCRIPT, scriptName, System.nanoTime() - start);
             LOGGER.info(" ... Done");
+            return updateCounts.build().toArray();
 
         } catch (Exception e) {
             LOGGER.error("While applying " + scriptName, e);
-            throw new RuntimeException(e);
+            throw new RuntimeException("could not apply " + scriptName, e);
+        }
+    }
+
+    /**
+     * runs a file, which is mapped in memory rather than read through a stream, see {@link MappedFileReader}.
+     */
+    public int[] run(String scriptName, Path script) throws IOException {
+        try (Reader reader = new MappedFileReader(script)) {
+            return run(scriptName, reader);
+        }
+    }
+
+    /**
+     * opens an UTF-8 script : files are mapped in memory, other locations (jar entries ...) are read through their
+     * URL handler. Either way, reading bytes that are not UTF-8 fails instead of replacing them.
+     */
+    public static Reader open(URL script) throws IOException {
+        if ("file".equals(script.getProtocol())) {
+            try {
+                return new MappedFileReader(Paths.get(script.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        return new InputStreamReader(script.openStream(), decoder);
+    }
+
+    private void executeStatements(String scriptName, Connection connection, SqlStatementReader statements, IntStream.Builder updateCounts) throws SQLException, IOException {
+        try (Statement stmt = connection.createStatement()) {
+            int pending = 0;
+            String cmd;
+            while ((cmd = statements.next()) != null) {
+                if (batchSize > 1 && isDml(cmd)) {
+                    stmt.addBatch(cmd);
+                    if (++pending == batchSize) {
+                        executeBatch(scriptName, stmt, updateCounts);
+                        pending = 0;
+                    }
+                } else {
+                    if (pending > 0) {
+                        executeBatch(scriptName, stmt, updateCounts);
+                        pending = 0;
+                    }
+                    long start = System.nanoTime();
+                    int count = stmt.execute(cmd) ? -1 : stmt.getUpdateCount();
+                    metrics.recordStatement(scriptName, cmd, System.nanoTime() - start, count);
+                    updateCounts.add(count);
+                }
+            }
+            if (pending > 0) {
+                executeBatch(scriptName, stmt, updateCounts);
+            }
+        }
+    }
+
+    private void executeBatch(String scriptName, Statement stmt, IntStream.Builder updateCounts) throws SQLException {
+        long start = System.nanoTime();
+        int[] counts = stmt.executeBatch();
+        metrics.recordTime(MetricsRecorder.BATCH, scriptName, System.nanoTime() - start);
+        long rows = 0;
+        for (int count : counts) {
+            updateCounts.add(count);
+            rows += Math.max(0, count);
+        }
+        if (rows > 0) {
+            metrics.recordCount(MetricsRecorder.ROWS, scriptName, rows);
+        }
+    }
+
+    static boolean isDml(String sql) {
+        int length = sql.length();
+        int i = 0;
+        //skip leading whitespace and comments
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int eol = sql.indexOf('\n', i);
+                i = eol < 0 ? length : eol + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else {
+                break;
+            }
+        }
+        int start = i;
+        while (i < length && Character.isLetter(sql.charAt(i))) {
+            i++;
+        }
+        switch (sql.substring(start, i).toLowerCase(Locale.ROOT)) {
+            case "insert":
+            case "update":
+            case "delete":
+            case "merge":
+                return true;
+            default:
+                return false;
         }
     }
 }
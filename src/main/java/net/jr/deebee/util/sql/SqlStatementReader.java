@@ -0,0 +1,240 @@
+package net.jr.deebee.util.sql;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a sql script into statements while reading it, so that only the statement being built is kept in memory.
+ * Semicolons are ignored when they appear in quoted strings or identifiers, in comments, or in dollar-quoted bodies
+ * ($$ ... $$ or $tag$ ... $tag$) such as the ones used for procedure definitions.
+ * Quotes are escaped by doubling them, as in standard SQL. Scripts written for MySQL, which also escapes them with a
+ * backslash ('it\'s'), must be read with {@link #setBackslashEscapes(boolean)}.
+ * A block comment ends at its first closing delimiter, as in MySQL or H2. Scripts written for PostgreSQL, where block
+ * comments nest, must be read with {@link #setNestedComments(boolean)}.
+ */
+public class SqlStatementReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+
+    private final char[] buffer;
+
+    private int pos = 0;
+
+    private int limit = 0;
+
+    private boolean eof = false;
+
+    private boolean backslashEscapes = false;
+
+    private boolean nestedComments = false;
+
+    private final StringBuilder statement = new StringBuilder();
+
+    public SqlStatementReader(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public SqlStatementReader(Reader reader, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize");
+        }
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * @param backslashEscapes true if a backslash escapes the next character in quoted strings, as in MySQL
+     */
+    public SqlStatementReader setBackslashEscapes(boolean backslashEscapes) {
+        this.backslashEscapes = backslashEscapes;
+        return this;
+    }
+
+    /**
+     * @param nestedComments true if a block comment opened inside a block comment must be closed too, as in PostgreSQL
+     */
+    public SqlStatementReader setNestedComments(boolean nestedComments) {
+        this.nestedComments = nestedComments;
+        return this;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int r;
+        do {
+            r = reader.read(buffer, 0, buffer.length);
+        } while (r == 0);
+        if (r < 0) {
+            eof = true;
+            return false;
+        }
+        pos = 0;
+        limit = r;
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    /**
+     * @return the next statement, trimmed and without its terminating semicolon, or null when the end of the script is reached.
+     * Statements that only contain whitespace or comments are skipped.
+     */
+    public String next() throws IOException {
+        statement.setLength(0);
+        boolean significant = false;
+        int c;
+        while ((c = read()) != -1) {
+            switch (c) {
+                case ';':
+                    if (significant) {
+                        return statement.toString().trim();
+                    }
+                    statement.setLength(0);
+                    continue;
+                case '\'':
+                case '"':
+                case '`':
+                    statement.append((char) c);
+                    readQuoted((char) c);
+                    significant = true;
+                    continue;
+                case '-':
+                    if (peek() == '-') {
+                        statement.append('-');
+                        readLineComment();
+                        continue;
+                    }
+                    break;
+                case '/':
+                    if (peek() == '*') {
+                        statement.append('/');
+                        readBlockComment();
+                        continue;
+                    }
+                    break;
+                case '$':
+                    statement.append('$');
+                    readDollarQuoted();
+                    significant = true;
+                    continue;
+                default:
+                    break;
+            }
+            statement.append((char) c);
+            if (!Character.isWhitespace(c)) {
+                significant = true;
+            }
+        }
+        if (significant) {
+            String last = statement.toString().trim();
+            statement.setLength(0);
+            return last;
+        }
+        return null;
+    }
+
+    private void readQuoted(char quote) throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            statement.append((char) c);
+            if (c == '\\' && backslashEscapes && quote != '`') {
+                c = read();
+                if (c == -1) {
+                    return;
+                }
+                statement.append((char) c);
+            } else if (c == quote) {
+                //a doubled quote is an escaped quote
+                if (peek() == quote) {
+                    statement.append((char) read());
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readLineComment() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            statement.append((char) c);
+            if (c == '\n') {
+                return;
+            }
+        }
+    }
+
+    private void readBlockComment() throws IOException {
+        statement.append((char) read());
+        int depth = 1;
+        int c;
+        while ((c = read()) != -1) {
+            statement.append((char) c);
+            if (c == '*' && peek() == '/') {
+                statement.append((char) read());
+                if (--depth == 0) {
+                    return;
+                }
+            } else if (c == '/' && nestedComments && peek() == '*') {
+                statement.append((char) read());
+                depth++;
+            }
+        }
+    }
+
+    /**
+     * called after a '$' has been read : if it opens a dollar-quoted string, the whole string is consumed, otherwise
+     * (positional parameter like $1, identifier containing a dollar) only the characters that were examined are kept.
+     */
+    private void readDollarQuoted() throws IOException {
+        int tagStart = statement.length() - 1;
+        int c;
+        while ((c = peek()) != -1 && (c == '_' || Character.isLetter(c) || (Character.isDigit(c) && statement.length() > tagStart + 1))) {
+            statement.append((char) read());
+        }
+        if (c != '$') {
+            return;
+        }
+        statement.append((char) read());
+        String tag = statement.substring(tagStart);
+        int bodyStart = statement.length();
+        while ((c = read()) != -1) {
+            statement.append((char) c);
+            if (c == '$' && statement.length() - bodyStart >= tag.length() && endsWith(statement, tag)) {
+                return;
+            }
+        }
+    }
+
+    private static boolean endsWith(StringBuilder sb, String suffix) {
+        int offset = sb.length() - suffix.length();
+        for (int i = 0; i < suffix.length(); i++) {
+            if (sb.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
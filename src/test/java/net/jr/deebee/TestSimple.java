@@ -1,10 +1,38 @@
 package net.jr.deebee;
 
+import net.jr.deebee.dao.Dao;
+import net.jr.deebee.dao.DaoDialect;
+import net.jr.deebee.dao.H2Dao;
+import net.jr.deebee.dao.LockLease;
+import net.jr.deebee.metrics.InMemoryMetrics;
+import net.jr.deebee.metrics.MetricsRecorder;
+import net.jr.deebee.model.ChecksumMismatch;
+import net.jr.deebee.model.ExecutionPlan;
+import net.jr.deebee.model.UpdateRule;
+import net.jr.deebee.scripts.ChecksumCache;
+import net.jr.deebee.scripts.ScriptIndex;
 import org.h2.Driver;
+import org.h2.jdbcx.JdbcDataSource;
+import org.jdeferred.Promise;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestSimple {
 
@@ -44,4 +72,590 @@ public class TestSimple {
 
     }
 
+    private static List<String> runCostPlan(String dbName, double baselineCost) throws Exception {
+        List<String> executed = new ArrayList<>();
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        String[] chain = {UpdatePlanBuilder.INITIAL_VERSION, "1.0.0", "2.0.0", "3.0.0"};
+        for (int i = 1; i < chain.length; i++) {
+            String name = chain[i - 1] + "->" + chain[i];
+            builder.fromVersion(chain[i - 1]).toVersion(chain[i]).action(updateRule -> executed.add(name));
+        }
+        builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION)
+                .toVersion("3.0.0")
+                .withCost(baselineCost)
+                .action(updateRule -> executed.add("baseline"));
+        builder.sqlRunner(DriverManager.getConnection("jdbc:h2:mem:" + dbName)).run();
+        return executed;
+    }
+
+    @Test
+    public void testCheapestPathIsChosen() throws Exception {
+        getConnection();
+        Assert.assertEquals(Arrays.asList("baseline"), runCostPlan("cheapBaseline", 0.5));
+        Assert.assertEquals(Arrays.asList("0.0.0->1.0.0", "1.0.0->2.0.0", "2.0.0->3.0.0"), runCostPlan("slowBaseline", 10));
+        //free rules are allowed, they disable the heuristic
+        Assert.assertEquals(Arrays.asList("baseline"), runCostPlan("freeBaseline", 0));
+    }
+
+    @Test
+    public void testInvalidCosts() {
+        for (double cost : new double[]{-1, Double.NaN, Double.POSITIVE_INFINITY}) {
+            try {
+                new UpdatePlanBuilder().fromVersion(UpdatePlanBuilder.INITIAL_VERSION).toVersion("1.0.0").withCost(cost);
+                Assert.fail("invalid cost accepted : " + cost);
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        }
+        UpdateRule rule = new UpdateRule(null);
+        rule.setMeasuredCost(0.0);
+        Assert.assertEquals(UpdateRule.MIN_MEASURED_COST, rule.getCost(), 0.0);
+    }
+
+    @Test
+    public void testParallelGroup() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:parallel;DB_CLOSE_DELAY=-1");
+
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION)
+                .toVersion("1.0.0")
+                .action(updateRule -> {
+                    try (Statement stmt = updateRule.getPlan().getConfig().getConnection().createStatement()) {
+                        for (int i = 0; i < 3; i++) {
+                            stmt.execute("create table t" + i + "(id integer, label varchar(32))");
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+
+        //every rule of the group waits for the others : they can only all succeed if they run concurrently
+        CountDownLatch latch = new CountDownLatch(3);
+        Set<Connection> connections = Collections.synchronizedSet(new HashSet<>());
+        List<Boolean> concurrent = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            int table = i;
+            builder.fromVersion("1." + i + ".0")
+                    .toVersion("1." + (i + 1) + ".0")
+                    .parallelGroup("indexes")
+                    .action(updateRule -> {
+                        try {
+                            Connection connection = updateRule.getPlan().getConfig().getConnection();
+                            connections.add(connection);
+                            try (Statement stmt = connection.createStatement()) {
+                                stmt.execute("create index idx_t" + table + " on t" + table + "(label)");
+                            }
+                            latch.countDown();
+                            concurrent.add(latch.await(10, TimeUnit.SECONDS));
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+
+        builder.config().setParallelism(3);
+        builder.sqlRunner(dataSource).run();
+
+        Assert.assertEquals(Arrays.asList(true, true, true), concurrent);
+        Assert.assertEquals(3, connections.size());
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("select s.to_version from db_update_current c join db_update_status s on s.id = c.status_id")) {
+            rs.next();
+            Assert.assertEquals("1.3.0", rs.getString(1).trim());
+        }
+    }
+
+    @Test
+    public void testParallelGroupResume() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:parallelResume;DB_CLOSE_DELAY=-1");
+
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION).toVersion("1.0.0");
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            String target = "1." + (i + 1) + ".0";
+            builder.fromVersion("1." + i + ".0")
+                    .toVersion(target)
+                    .parallelGroup("indexes")
+                    .action(updateRule -> executed.add(target));
+        }
+        builder.sqlRunner(dataSource).run("1.0.0");
+
+        //a previous run committed the first rule of the group, then failed to commit the others
+        try (Connection connection = dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute("insert into db_update_status(from_version, to_version, since) values('1.0.0', '1.1.0', current_timestamp)");
+        }
+
+        builder.sqlRunner(dataSource).run();
+
+        Collections.sort(executed);
+        Assert.assertEquals(Arrays.asList("1.2.0", "1.3.0"), executed);
+        try (Connection connection = dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("select s.to_version from db_update_current c join db_update_status s on s.id = c.status_id")) {
+                rs.next();
+                Assert.assertEquals("1.3.0", rs.getString(1).trim());
+            }
+            try (ResultSet rs = stmt.executeQuery("select count(*) from db_update_status where to_version = '1.1.0'")) {
+                rs.next();
+                Assert.assertEquals(1, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testActionExecutorAndFailure() throws Exception {
+        getConnection();
+        ExecutorService executor = Executors.newFixedThreadPool(2, r -> new Thread(r, "action-thread"));
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        List<Promise.State> outcomes = Collections.synchronizedList(new ArrayList<>());
+        Promise<UpdateRule, Throwable, Void> first = builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION)
+                .toVersion("1.0.0")
+                .action(updateRule -> {
+                    threads.add(Thread.currentThread().getName());
+                })
+                .then(updateRule -> {
+                    threads.add(Thread.currentThread().getName());
+                })
+                .always((state, resolved, rejected) -> outcomes.add(state));
+        Promise<UpdateRule, Throwable, Void> second = builder.fromVersion("1.0.0")
+                .toVersion("2.0.0")
+                .action(updateRule -> {
+                    throw new IllegalStateException("broken rule");
+                })
+                .fail(failures::add)
+                .always((state, resolved, rejected) -> outcomes.add(state));
+        builder.config().setActionExecutor(executor);
+
+        try {
+            builder.sqlRunner(DriverManager.getConnection("jdbc:h2:mem:actionExecutor;DB_CLOSE_DELAY=-1")).run();
+            Assert.fail("the failure of the action should stop the update");
+        } catch (UpdateFailureException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(Arrays.asList("action-thread", "action-thread"), threads);
+        Assert.assertEquals(1, failures.size());
+        Assert.assertEquals(Arrays.asList(Promise.State.RESOLVED, Promise.State.REJECTED), outcomes);
+        first.waitSafely(1000);
+        Assert.assertTrue(first.isResolved());
+        second.waitSafely(1000);
+        Assert.assertTrue(second.isRejected());
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:actionExecutor");
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("select count(*) from db_update_status")) {
+            rs.next();
+            Assert.assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        getConnection();
+        Path script = Files.createTempFile("plan", ".sql");
+        Files.write(script, "create table planned(id integer);\ninsert into planned values(1);\n".getBytes(StandardCharsets.UTF_8));
+
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION)
+                .toVersion("1.0.0")
+                .withScript(script.toUri().toURL())
+                .action(updateRule -> {
+                });
+        builder.fromVersion("1.0.0")
+                .toVersion("2.0.0")
+                .withCost(3)
+                .action(updateRule -> {
+                });
+
+        UpdateRunner.clearPathCache();
+        String url = "jdbc:h2:mem:plan;DB_CLOSE_DELAY=-1";
+        ExecutionPlan plan = builder.sqlRunner(DriverManager.getConnection(url)).plan();
+        Assert.assertEquals(UpdatePlanBuilder.INITIAL_VERSION, plan.getCurrentVersion());
+        Assert.assertEquals(2, plan.getSteps().size());
+        Assert.assertEquals(4.0, plan.getCost(), 0.0);
+        Assert.assertEquals(Arrays.asList("create table planned(id integer)", "insert into planned values(1)"), plan.getSteps().get(0).getStatements());
+        Assert.assertTrue(plan.getSteps().get(1).getStatements().isEmpty());
+
+        //planning does not create the deebee tables
+        try (Connection connection = DriverManager.getConnection(url);
+             ResultSet rs = connection.getMetaData().getTables(null, null, "DB_UPDATE_STATUS", null)) {
+            Assert.assertFalse(rs.next());
+        }
+
+        //the connection is released once planned
+        Connection planned = DriverManager.getConnection(url);
+        builder.sqlRunner(planned).plan();
+        Assert.assertTrue(planned.isClosed());
+        Assert.assertEquals(1, UpdateRunner.getPathCacheMisses());
+        Assert.assertEquals(1, UpdateRunner.getPathCacheHits());
+
+        builder.sqlRunner(DriverManager.getConnection(url)).run("1.0.0");
+        plan = builder.sqlRunner(DriverManager.getConnection(url)).plan();
+        Assert.assertEquals("1.0.0", plan.getCurrentVersion());
+        Assert.assertEquals(1, plan.getSteps().size());
+        Assert.assertTrue(builder.sqlRunner(DriverManager.getConnection(url)).plan("1.0.0").isUpToDate());
+        Files.delete(script);
+    }
+
+    @Test
+    public void testUpToDateFastPath() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:upToDate;DB_CLOSE_DELAY=-1");
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        List<String> executed = new ArrayList<>();
+
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION)
+                .toVersion("1.0.0")
+                .action(updateRule -> executed.add("1.0.0"));
+        builder.config().setMetrics(metrics).setUpToDateTtl(60000);
+
+        builder.sqlRunner(dataSource).run();
+        builder.sqlRunner(dataSource).run();
+        Assert.assertEquals(Arrays.asList("1.0.0"), executed);
+        //the second run did not resolve any path
+        Assert.assertEquals(1, metrics.get(MetricsRecorder.PATH_RESOLUTION, "1.0.0").getCount());
+
+        //the version is memoized for the DataSource
+        try (Connection connection = dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute("delete from db_update_current");
+        }
+        Assert.assertTrue(builder.sqlRunner(dataSource).isUpToDate("1.0.0"));
+        builder.config().setUpToDateTtl(0);
+        Assert.assertFalse(builder.sqlRunner(dataSource).isUpToDate("1.0.0"));
+    }
+
+    @Test
+    public void testMigrationLock() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:migrationLock;DB_CLOSE_DELAY=-1");
+        AtomicInteger executions = new AtomicInteger();
+        Set<Thread> denied = Collections.synchronizedSet(new HashSet<>());
+        CountDownLatch othersWaiting = new CountDownLatch(2);
+        CountDownLatch renewals = new CountDownLatch(2);
+
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION)
+                .toVersion("1.0.0")
+                .action(updateRule -> {
+                    executions.incrementAndGet();
+                    //holds the lock until the other instances have found it taken, and it has been renewed
+                    try {
+                        Assert.assertTrue(othersWaiting.await(10, TimeUnit.SECONDS));
+                        Assert.assertTrue(renewals.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+        //the clock of the lock stands still, so that the lease only expires if it is not renewed ; it is short enough
+        //to be renewed often
+        builder.config().setMigrationLock(300, 20, 20000).setDialect(observeLock(() -> {
+            if (denied.add(Thread.currentThread())) {
+                othersWaiting.countDown();
+            }
+        }, renewals::countDown));
+
+        //all the instances start at once, only one of them updates the database
+        ExecutorService instances = Executors.newFixedThreadPool(3);
+        List<Future<?>> runs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            runs.add(instances.submit(() -> builder.sqlRunner(dataSource).run()));
+        }
+        for (Future<?> run : runs) {
+            run.get(20, TimeUnit.SECONDS);
+        }
+        instances.shutdown();
+        Assert.assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void testMigrationLockNeedsConnections() throws Exception {
+        String url = "jdbc:h2:mem:singleConnectionLock;DB_CLOSE_DELAY=-1";
+        AtomicInteger executions = new AtomicInteger();
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION)
+                .toVersion("1.0.0")
+                .action(updateRule -> executions.incrementAndGet());
+        builder.config().setMigrationLock(60000, 20, 1000);
+
+        try {
+            builder.sqlRunner(DriverManager.getConnection(url)).run();
+            Assert.fail("the lease cannot be renewed on a single connection");
+        } catch (UpdateFailureException e) {
+            Assert.assertTrue(e.getMessage().contains("cannot be renewed"));
+        }
+        Assert.assertEquals(0, executions.get());
+
+        //the lock has been released, and a connection provider gives the lock connections of its own
+        builder.sqlRunner(() -> DriverManager.getConnection(url)).run();
+        Assert.assertEquals(1, executions.get());
+    }
+
+    /**
+     * @return the H2 dialect, with a dao that reports the attempts to take the migration lock that failed, and the
+     * renewals of its lease. Its lock uses a clock that stands still, instead of the clock of the database.
+     */
+    private static DaoDialect observeLock(Runnable denied, Runnable renewed) {
+        return new DaoDialect() {
+            @Override
+            public boolean supports(DatabaseMetaData metaData) {
+                return true;
+            }
+
+            @Override
+            public Dao create(Connection connection, Callable<Connection> lockConnectionProvider) {
+                return new H2Dao(connection, lockConnectionProvider) {
+                    @Override
+                    protected String now() {
+                        return ":now";
+                    }
+
+                    @Override
+                    protected String leaseExpiry() {
+                        return ":expiresAt";
+                    }
+
+                    @Override
+                    protected long currentTimeMillis() {
+                        return 0;
+                    }
+
+                    @Override
+                    public LockLease tryLock(String owner, long leaseMillis) throws Exception {
+                        LockLease lease = super.tryLock(owner, leaseMillis);
+                        if (lease == null) {
+                            denied.run();
+                        }
+                        return lease;
+                    }
+
+                    @Override
+                    public boolean renewLock(LockLease lease) throws Exception {
+                        boolean renewedLease = super.renewLock(lease);
+                        if (renewedLease) {
+                            renewed.run();
+                        }
+                        return renewedLease;
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void testVerifyChecksums() throws Exception {
+        getConnection();
+        Path directory = Files.createTempDirectory("verify");
+        Path first = directory.resolve("0.0.0_to_1.0.0.sql");
+        Files.write(first, "create table verified(id integer);".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("1.0.0_to_2.0.0.sql"), "insert into verified values(1);".getBytes(StandardCharsets.UTF_8));
+        String url = "jdbc:h2:mem:verify;DB_CLOSE_DELAY=-1";
+        ChecksumCache checksumCache = new ChecksumCache(directory.resolve("checksums.properties"));
+
+        UpdatePlanBuilder builder = new UpdatePlanBuilder().importFromSqlDir(directory);
+        builder.config().setChecksumCache(checksumCache).setVerifyChecksums(true);
+        builder.sqlRunner(DriverManager.getConnection(url)).run();
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("select count(*) from db_update_status where checksum is not null")) {
+            rs.next();
+            Assert.assertEquals(2, rs.getInt(1));
+        }
+        Assert.assertTrue(builder.sqlRunner(DriverManager.getConnection(url)).verify().isEmpty());
+        //the scripts were hashed once, when they were applied
+        Assert.assertEquals(2, checksumCache.getMisses());
+
+        Files.write(first, "create table verified(id bigint);".getBytes(StandardCharsets.UTF_8));
+        List<ChecksumMismatch> mismatches = builder.sqlRunner(DriverManager.getConnection(url)).verify();
+        Assert.assertEquals(1, mismatches.size());
+        Assert.assertEquals("1.0.0", mismatches.get(0).getStatus().getToVersion());
+        try {
+            builder.sqlRunner(DriverManager.getConnection(url)).run();
+            Assert.fail("a changed script should stop the update");
+        } catch (UpdateFailureException e) {
+            Assert.assertTrue(e.getMessage().contains("changed"));
+        }
+
+        //statuses follow their scripts when they move ; indexed scripts are not hashed again
+        Path moved = Files.createTempDirectory("moved");
+        Files.write(moved.resolve("0.0.0_to_1.0.0.sql"), "create table verified(id integer);".getBytes(StandardCharsets.UTF_8));
+        Files.copy(directory.resolve("1.0.0_to_2.0.0.sql"), moved.resolve("1.0.0_to_2.0.0.sql"));
+        ScriptIndex.write(moved);
+        long misses = checksumCache.getMisses();
+        UpdatePlanBuilder movedBuilder = new UpdatePlanBuilder().importFromSqlDir(moved);
+        movedBuilder.config().setChecksumCache(checksumCache);
+        Assert.assertTrue(movedBuilder.sqlRunner(DriverManager.getConnection(url)).verify().isEmpty());
+        Assert.assertEquals(misses, checksumCache.getMisses());
+        //nor when they are applied, their status gets the hash of the index
+        String indexed = "jdbc:h2:mem:verifyIndexed;DB_CLOSE_DELAY=-1";
+        movedBuilder.sqlRunner(DriverManager.getConnection(indexed)).run();
+        Assert.assertEquals(misses, checksumCache.getMisses());
+        Assert.assertTrue(movedBuilder.sqlRunner(DriverManager.getConnection(indexed)).verify().isEmpty());
+
+        //an applied script that is not in the plan anymore
+        Files.delete(moved.resolve(ScriptIndex.FILE_NAME));
+        Files.delete(moved.resolve("0.0.0_to_1.0.0.sql"));
+        UpdatePlanBuilder missingBuilder = new UpdatePlanBuilder().importFromSqlDir(moved);
+        missingBuilder.config().setChecksumCache(checksumCache);
+        mismatches = missingBuilder.sqlRunner(DriverManager.getConnection(url)).verify();
+        Assert.assertEquals(1, mismatches.size());
+        Assert.assertTrue(mismatches.get(0).isMissing());
+        Assert.assertEquals("1.0.0", mismatches.get(0).getStatus().getToVersion());
+    }
+
+    @Test
+    public void testBaseline() throws Exception {
+        getConnection();
+        Path directory = Files.createTempDirectory("baseline");
+        Files.write(directory.resolve("0.0.0_to_1.0.0.sql"), ("create table squashed(id integer auto_increment primary key, label varchar(32));\n"
+                + "create table db_update_notes(note varchar(32));").getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("1.0.0_to_2.0.0.sql"), "insert into squashed(label) values('one; two');".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("2.0.0_to_3.0.0.sql"), "create index idx_squashed on squashed(label);".getBytes(StandardCharsets.UTF_8));
+        String url = "jdbc:h2:mem:baselineSource;DB_CLOSE_DELAY=-1";
+        new UpdatePlanBuilder().importFromSqlDir(directory).sqlRunner(DriverManager.getConnection(url)).run();
+
+        Path baseline = new UpdatePlanBuilder().importFromSqlDir(directory).sqlRunner(DriverManager.getConnection(url)).exportBaseline(directory);
+        Assert.assertEquals("baseline_3.0.0.sql", baseline.getFileName().toString());
+        String exported = new String(Files.readAllBytes(baseline), StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+        //only the tables of deebee are left out, and statements end with a single semicolon
+        Assert.assertTrue(exported.contains("db_update_notes"));
+        Assert.assertFalse(exported.contains("db_update_status") || exported.contains("db_update_log") || exported.contains("db_update_current"));
+        Assert.assertFalse(exported.contains(";;"));
+
+        //a new database is created from the baseline alone
+        UpdatePlanBuilder builder = new UpdatePlanBuilder().importFromSqlDir(directory);
+        String fresh = "jdbc:h2:mem:baselineTarget;DB_CLOSE_DELAY=-1";
+        ExecutionPlan plan = builder.sqlRunner(DriverManager.getConnection(fresh)).plan();
+        Assert.assertEquals(1, plan.getSteps().size());
+        Assert.assertEquals(baseline.toString(), plan.getSteps().get(0).getRule().getReference());
+        builder.sqlRunner(DriverManager.getConnection(fresh)).run();
+        try (Connection connection = DriverManager.getConnection(fresh);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("select label from squashed")) {
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals("one; two", rs.getString(1));
+            Assert.assertFalse(rs.next());
+        }
+        //the sequence of the identity column is restored
+        try (Connection connection = DriverManager.getConnection(fresh); Statement stmt = connection.createStatement()) {
+            stmt.execute("insert into squashed(label) values('three')");
+        }
+
+        //databases that are already past the initial version keep following the chain
+        String partial = "jdbc:h2:mem:baselinePartial;DB_CLOSE_DELAY=-1";
+        builder.sqlRunner(DriverManager.getConnection(partial)).run("1.0.0");
+        Assert.assertEquals(2, builder.sqlRunner(DriverManager.getConnection(partial)).plan().getSteps().size());
+    }
+
+    @Test
+    public void testBaselineOfEmptySchema() throws Exception {
+        getConnection();
+        Path directory = Files.createTempDirectory("baseline");
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION).toVersion("1.0.0").action(updateRule -> {
+        });
+        String url = "jdbc:h2:mem:baselineEmpty;DB_CLOSE_DELAY=-1";
+        builder.sqlRunner(DriverManager.getConnection(url)).run();
+
+        //an empty baseline would be preferred to the chain by new databases
+        try {
+            builder.sqlRunner(DriverManager.getConnection(url)).exportBaseline(directory);
+            Assert.fail("a schema without tables must not be exported");
+        } catch (UpdateFailureException e) {
+            //expected
+        }
+        //nor a temporary file
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * runs a chain of 4 rules that insert a row each, the rule to failAt failing.
+     *
+     * @return the version the database is left at
+     */
+    private static String runFailing(String dbName, UpdateRunner.TransactionMode mode, int size, int failAt, List<Integer> executed) throws Exception {
+        String url = "jdbc:h2:mem:" + dbName + ";DB_CLOSE_DELAY=-1";
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        for (int i = 1; i <= 4; i++) {
+            int rule = i;
+            builder.fromVersion((i - 1) + ".0.0")
+                    .toVersion(i + ".0.0")
+                    .action(updateRule -> {
+                        executed.add(rule);
+                        if (rule == failAt) {
+                            throw new IllegalStateException("broken rule");
+                        }
+                        try (Statement stmt = updateRule.getPlan().getConfig().getConnection().createStatement()) {
+                            stmt.execute("insert into applied values(" + rule + ")");
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+        builder.config().setTransactionMode(mode, size);
+        try {
+            builder.sqlRunner(DriverManager.getConnection(url)).run();
+        } catch (UpdateFailureException e) {
+            Assert.assertTrue(failAt > 0);
+        }
+        return builder.sqlRunner(DriverManager.getConnection(url)).plan().getCurrentVersion();
+    }
+
+    private static void createAppliedTable(String dbName) throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:" + dbName + ";DB_CLOSE_DELAY=-1");
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("create table applied(id integer)");
+        }
+    }
+
+    private static int countApplied(String dbName) throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:" + dbName + ";DB_CLOSE_DELAY=-1");
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("select count(*) from applied")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testTransactionMode() throws Exception {
+        getConnection();
+        String[] dbNames = {"txPlan", "txRule", "txTwoRules"};
+        for (String dbName : dbNames) {
+            createAppliedTable(dbName);
+        }
+
+        List<Integer> executed = new ArrayList<>();
+        Assert.assertEquals(UpdatePlanBuilder.INITIAL_VERSION, runFailing("txPlan", UpdateRunner.TransactionMode.PLAN, 1, 3, executed));
+        Assert.assertEquals(0, countApplied("txPlan"));
+
+        Assert.assertEquals("2.0.0", runFailing("txRule", UpdateRunner.TransactionMode.PER_RULE, 1, 3, executed));
+        Assert.assertEquals(2, countApplied("txRule"));
+
+        Assert.assertEquals("2.0.0", runFailing("txTwoRules", UpdateRunner.TransactionMode.PER_N_RULES, 2, 4, executed));
+
+        Assert.assertEquals(2, countApplied("txTwoRules"));
+
+        //the next run resumes from the last committed rule
+        executed.clear();
+        Assert.assertEquals("4.0.0", runFailing("txRule", UpdateRunner.TransactionMode.PER_RULE, 1, 0, executed));
+        Assert.assertEquals(Arrays.asList(3, 4), executed);
+        Assert.assertEquals(4, countApplied("txRule"));
+
+        try {
+            new UpdatePlanBuilder().config().setTransactionMode(UpdateRunner.TransactionMode.PER_N_RULES);
+            Assert.fail("PER_N_RULES needs a size");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
 }
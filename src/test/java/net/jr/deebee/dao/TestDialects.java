@@ -0,0 +1,198 @@
+package net.jr.deebee.dao;
+
+import net.jr.deebee.UpdatePlanBuilder;
+import net.jr.deebee.model.DbUpdateLog;
+import net.jr.deebee.model.DbUpdateStatus;
+import org.h2.Driver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * runs the dialects against H2 in the matching compatibility mode.
+ */
+public class TestDialects {
+
+    private static Callable<Connection> provider(String name, String mode) throws Exception {
+        DriverManager.registerDriver(new Driver());
+        String url = "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1" + (mode == null ? "" : ";MODE=" + mode);
+        return () -> DriverManager.getConnection(url);
+    }
+
+    private static Connection product(String productName) {
+        DatabaseMetaData metaData = (DatabaseMetaData) Proxy.newProxyInstance(TestDialects.class.getClassLoader(), new Class[]{DatabaseMetaData.class},
+                (proxy, method, args) -> method.getName().equals("getDatabaseProductName") ? productName : null);
+        return (Connection) Proxy.newProxyInstance(TestDialects.class.getClassLoader(), new Class[]{Connection.class},
+                (proxy, method, args) -> method.getName().equals("getMetaData") ? metaData : null);
+    }
+
+    /**
+     * wraps the connection so that, like PostgreSQL, a failed statement aborts the transaction : nothing else can run
+     * until it is rolled back, or rolled back to a savepoint.
+     */
+    private static Connection abortingOnFailure(Connection connection) {
+        AtomicBoolean aborted = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(TestDialects.class.getClassLoader(), new Class[]{Connection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("rollback")) {
+                aborted.set(false);
+            } else if (aborted.get() && (method.getName().equals("createStatement") || method.getName().equals("getMetaData"))) {
+                throw new SQLException("current transaction is aborted", "25P02");
+            }
+            Object result = invoke(method, connection, args);
+            if (!(result instanceof Statement)) {
+                return result;
+            }
+            return Proxy.newProxyInstance(TestDialects.class.getClassLoader(), new Class[]{Statement.class}, (stmtProxy, stmtMethod, stmtArgs) -> {
+                try {
+                    return invoke(stmtMethod, result, stmtArgs);
+                } catch (SQLException e) {
+                    if (!connection.getAutoCommit()) {
+                        aborted.set(true);
+                    }
+                    throw e;
+                }
+            });
+        });
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void testProbesKeepTheTransaction() throws Exception {
+        Connection connection = abortingOnFailure(provider("probes", null).call());
+        connection.setAutoCommit(false);
+        JdbcDao dao = new JdbcDao(connection);
+        Assert.assertEquals(UpdatePlanBuilder.INITIAL_VERSION, dao.readCurrentVersion());
+        Assert.assertTrue(dao.readChecksums().isEmpty());
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("select 1")) {
+            Assert.assertTrue(rs.next());
+        }
+        connection.rollback();
+    }
+
+    @Test
+    public void testDetect() throws Exception {
+        Assert.assertTrue(Daos.create(provider("detect", null).call(), null) instanceof H2Dao);
+        Assert.assertTrue(Daos.create(product("PostgreSQL"), null) instanceof PostgresDao);
+        Assert.assertTrue(Daos.create(product("MySQL"), null) instanceof MySqlDao);
+        Assert.assertTrue(Daos.create(product("MariaDB"), null) instanceof MySqlDao);
+        Assert.assertEquals(JdbcDao.class, Daos.create(product("Apache Derby"), null).getClass());
+    }
+
+    private static DbUpdateStatus status(String from, String to) {
+        DbUpdateStatus status = new DbUpdateStatus();
+        status.setFromVersion(from);
+        status.setToVersion(to);
+        status.setUser("tester");
+        return status;
+    }
+
+    static void exercise(Dao dao) throws Exception {
+        Assert.assertEquals(UpdatePlanBuilder.INITIAL_VERSION, dao.readCurrentVersion());
+        dao.begin();
+        try {
+            dao.ensureTablesExist();
+            DbUpdateStatus first = status(UpdatePlanBuilder.INITIAL_VERSION, "1.0.0");
+            dao.insertStatus(first);
+            dao.markAsCurrent(first);
+            DbUpdateStatus second = status("1.0.0", "2.0.0");
+            dao.insertStatus(second);
+            dao.markAsCurrent(second);
+            Assert.assertEquals(second.getId(), first.getId() + 1);
+            Assert.assertEquals("2.0.0", dao.getCurrentVersionFromDb().trim());
+
+            DbUpdateLog log = DbUpdateLog.createNew("INFO", "single");
+            dao.insertLog(log);
+            dao.insertLogs(Arrays.asList(DbUpdateLog.createNew("INFO", "a"), DbUpdateLog.createNew("INFO", "b")));
+            Assert.assertTrue(log.getId() > 0);
+            dao.commit();
+        } finally {
+            dao.end();
+        }
+    }
+
+    static void exerciseLock(Dao first, Dao second) throws Exception {
+        LockLease lease = first.tryLock("first", 60000);
+        Assert.assertNotNull(lease);
+        Assert.assertNull(second.tryLock("second", 60000));
+        Assert.assertTrue(first.renewLock(lease));
+        first.unlock(lease);
+        LockLease next = second.tryLock("second", 60000);
+        Assert.assertEquals(lease.getToken() + 1, next.getToken());
+        second.unlock(next);
+    }
+
+    @Test
+    public void testGeneric() throws Exception {
+        Callable<Connection> provider = provider("generic", null);
+        exercise(new JdbcDao(provider.call()));
+        exerciseLock(new JdbcDao(provider.call(), provider), new JdbcDao(provider.call(), provider));
+    }
+
+    @Test
+    public void testMySql() throws Exception {
+        Callable<Connection> provider = provider("mysql", "MySQL");
+        exercise(new MySqlDao(provider.call()));
+        exerciseLock(new MySqlDao(provider.call(), provider), new MySqlDao(provider.call(), provider));
+    }
+
+    /**
+     * H2 does not know the returning clause, upserts and interval arithmetic of PostgreSQL : the stand-in replaces them
+     * with their generic form, the rest of the dialect is run as is.
+     */
+    private static class PostgresStandIn extends PostgresDao {
+
+        private PostgresStandIn(Connection connection, Callable<Connection> lockConnectionProvider) {
+            super(connection, lockConnectionProvider);
+        }
+
+        @Override
+        protected boolean supportsReturning() {
+            return false;
+        }
+
+        @Override
+        protected String upsertCurrentQuery() {
+            return null;
+        }
+
+        @Override
+        protected String insertLockQuery() {
+            return "insert into db_update_lock(id, token) values(1, 0)";
+        }
+
+        @Override
+        protected String leaseExpiry() {
+            return "dateadd('MILLISECOND', :lease, current_timestamp)";
+        }
+    }
+
+    @Test
+    public void testPostgres() throws Exception {
+        PostgresDao dao = new PostgresDao(null);
+        Assert.assertTrue(dao.supportsReturning());
+        Assert.assertTrue(dao.upsertCurrentQuery().contains("on conflict (id) do update"));
+
+        Callable<Connection> provider = provider("postgres", "PostgreSQL");
+        exercise(new PostgresStandIn(provider.call(), null));
+        exerciseLock(new PostgresStandIn(provider.call(), provider), new PostgresStandIn(provider.call(), provider));
+    }
+}
@@ -0,0 +1,189 @@
+package net.jr.deebee.dao;
+
+import net.jr.deebee.UpdatePlanBuilder;
+import net.jr.deebee.model.DbUpdateLog;
+import net.jr.deebee.model.DbUpdateStatus;
+import org.h2.Driver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestH2Dao {
+
+    private static Connection getConnection(String name) throws Exception {
+        DriverManager.registerDriver(new Driver());
+        return DriverManager.getConnection("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+    }
+
+    private static DbUpdateStatus status(String from, String to) {
+        DbUpdateStatus status = new DbUpdateStatus();
+        status.setFromVersion(from);
+        status.setToVersion(to);
+        return status;
+    }
+
+    @Test
+    public void testStatus() throws Exception {
+        Dao dao = new H2Dao(getConnection("daoStatus"));
+        dao.begin();
+        try {
+            dao.ensureTablesExist();
+            Assert.assertEquals(UpdatePlanBuilder.INITIAL_VERSION, dao.getCurrentVersionFromDb());
+
+            DbUpdateStatus first = status(UpdatePlanBuilder.INITIAL_VERSION, "1.0.0");
+            dao.insertStatus(first);
+            dao.markAsCurrent(first);
+
+            DbUpdateStatus second = status("1.0.0", "1.1.0");
+            dao.insertStatus(second);
+
+            Assert.assertEquals(1, first.getId());
+            Assert.assertEquals(2, second.getId());
+            Assert.assertEquals("1.0.0", dao.getCurrentVersionFromDb().trim());
+
+            dao.markAsCurrent(second);
+            Assert.assertEquals("1.1.0", dao.getCurrentVersionFromDb().trim());
+            dao.commit();
+        } finally {
+            dao.end();
+        }
+    }
+
+    @Test
+    public void testCurrentFlagIsMigrated() throws Exception {
+        Connection connection = getConnection("daoLegacy");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("create table db_update_status(id integer auto_increment, from_version char(32) not null, to_version char(32) not null, since timestamp not null, current integer, user char(256), reference char(256), comment char(256), primary key(id))");
+            stmt.execute("create table db_update_log(id integer auto_increment, level char(16) not null, comment char(1024), tstamp timestamp not null default current_timestamp, primary key(id))");
+            stmt.execute("insert into db_update_status(from_version, to_version, since, current) values('0.0.0', '1.0.0', current_timestamp, 0)");
+            stmt.execute("insert into db_update_status(from_version, to_version, since, current) values('1.0.0', '2.0.0', current_timestamp, 1)");
+        }
+
+        Dao dao = new H2Dao(connection);
+        dao.begin();
+        try {
+            dao.ensureTablesExist();
+            Assert.assertEquals("2.0.0", dao.getCurrentVersionFromDb().trim());
+            dao.commit();
+        } finally {
+            dao.end();
+        }
+    }
+
+    private static int countLogs(Connection connection) throws Exception {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("select count(*) from db_update_log")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testBufferedLogs() throws Exception {
+        Connection connection = getConnection("daoLogs");
+        Dao dao = new H2Dao(connection);
+        dao.begin();
+        try {
+            dao.ensureTablesExist();
+            BufferedLogSink sink = new BufferedLogSink(dao, LogSink.FlushPolicy.PER_STEP, 3, 0);
+            List<DbUpdateLog> logs = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                DbUpdateLog log = DbUpdateLog.createNew("INFO", "message " + i);
+                logs.add(log);
+                sink.append(log);
+            }
+            //the buffer holds 3 entries at most
+            Assert.assertEquals(1, sink.getPendingCount());
+            Assert.assertEquals(3, countLogs(connection));
+            sink.stepCompleted();
+            Assert.assertEquals(0, sink.getPendingCount());
+            Assert.assertEquals(4, countLogs(connection));
+            Assert.assertEquals(4, logs.get(3).getId());
+            dao.commit();
+        } finally {
+            dao.end();
+        }
+    }
+
+    @Test
+    public void testLock() throws Exception {
+        String url = "jdbc:h2:mem:daoLock;DB_CLOSE_DELAY=-1";
+        getConnection("daoLock");
+        H2Dao first = new H2Dao(DriverManager.getConnection(url), () -> DriverManager.getConnection(url));
+        H2Dao second = new H2Dao(DriverManager.getConnection(url), () -> DriverManager.getConnection(url));
+
+        LockLease lease = first.tryLock("first", 60000);
+        Assert.assertNotNull(lease);
+        Assert.assertEquals(1, lease.getToken());
+        Assert.assertNull(second.tryLock("second", 60000));
+        Assert.assertTrue(first.renewLock(lease));
+        first.unlock(lease);
+
+        //an expired lease is taken over, and its holder can neither renew it nor commit
+        lease = first.tryLock("first", 1);
+        Thread.sleep(50);
+        LockLease other = second.tryLock("second", 60000);
+        Assert.assertNotNull(other);
+        Assert.assertTrue(other.getToken() > lease.getToken());
+        Assert.assertFalse(first.renewLock(lease));
+        first.begin();
+        try {
+            first.fence(lease);
+            Assert.fail("a lost lease should not be fenced");
+        } catch (IllegalStateException e) {
+            //expected
+        } finally {
+            first.rollback();
+            first.end();
+        }
+        second.unlock(other);
+        second.end();
+    }
+
+    @Test
+    public void testLostLockStopsTheHeartbeat() throws Exception {
+        String url = "jdbc:h2:mem:daoLostLock;DB_CLOSE_DELAY=-1";
+        getConnection("daoLostLock");
+        AtomicInteger renewals = new AtomicInteger();
+        CountDownLatch renewed = new CountDownLatch(1);
+        H2Dao dao = new H2Dao(DriverManager.getConnection(url), () -> DriverManager.getConnection(url)) {
+            @Override
+            public boolean renewLock(LockLease lease) throws Exception {
+                renewals.incrementAndGet();
+                //another instance takes the lock over before it is renewed
+                try (Connection c = DriverManager.getConnection(url); Statement stmt = c.createStatement()) {
+                    stmt.execute("update db_update_lock set token = token + 1");
+                }
+                try {
+                    return super.renewLock(lease);
+                } finally {
+                    renewed.countDown();
+                }
+            }
+        };
+        MigrationLock lock = new MigrationLock(dao, "lost", 30, 10, 1000);
+        Assert.assertTrue(lock.acquire(() -> false));
+        Assert.assertTrue(renewed.await(10, TimeUnit.SECONDS));
+        dao.begin();
+        try {
+            lock.fence();
+            Assert.fail("a lost lease should not be fenced");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains("has been lost"));
+        } finally {
+            dao.rollback();
+            dao.end();
+        }
+        lock.release();
+        //the heartbeat stopped at the first renewal that failed
+        Assert.assertEquals(1, renewals.get());
+    }
+}
@@ -0,0 +1,94 @@
+package net.jr.deebee.dao;
+
+import net.jr.deebee.UpdatePlanBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+
+/**
+ * runs {@link PostgresDao} against a real PostgreSQL, skipped unless the deebee.postgres.url system property is set
+ * (which also adds the driver, see the postgres profile). Each test works in a schema of its own, dropped afterwards.
+ */
+public class TestPostgres {
+
+    private String schema;
+
+    private Callable<Connection> provider;
+
+    @Before
+    public void createSchema() throws Exception {
+        String url = System.getProperty("deebee.postgres.url");
+        Assume.assumeNotNull(url);
+        String user = System.getProperty("deebee.postgres.user");
+        String password = System.getProperty("deebee.postgres.password");
+        schema = "deebee_test_" + Long.toHexString(System.nanoTime());
+        Callable<Connection> server = () -> DriverManager.getConnection(url, user, password);
+        try (Connection connection = server.call(); Statement stmt = connection.createStatement()) {
+            stmt.execute("create schema " + schema);
+        }
+        provider = () -> {
+            Connection connection = server.call();
+            connection.setSchema(schema);
+            return connection;
+        };
+    }
+
+    @After
+    public void dropSchema() throws Exception {
+        if (provider == null) {
+            return;
+        }
+        try (Connection connection = provider.call(); Statement stmt = connection.createStatement()) {
+            stmt.execute("drop schema " + schema + " cascade");
+        }
+    }
+
+    @Test
+    public void testDao() throws Exception {
+        Assert.assertTrue(Daos.create(provider.call(), null) instanceof PostgresDao);
+        TestDialects.exercise(new PostgresDao(provider.call()));
+        TestDialects.exerciseLock(new PostgresDao(provider.call(), provider), new PostgresDao(provider.call(), provider));
+    }
+
+    @Test
+    public void testProbesKeepTheTransaction() throws Exception {
+        try (Connection connection = provider.call()) {
+            connection.setAutoCommit(false);
+            PostgresDao dao = new PostgresDao(connection);
+            Assert.assertEquals(UpdatePlanBuilder.INITIAL_VERSION, dao.readCurrentVersion());
+            Assert.assertTrue(dao.readChecksums().isEmpty());
+            try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("select 1")) {
+                Assert.assertTrue(rs.next());
+            }
+            connection.rollback();
+        }
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        UpdatePlanBuilder builder = new UpdatePlanBuilder();
+        builder.fromVersion(UpdatePlanBuilder.INITIAL_VERSION)
+                .toVersion("1.0.0")
+                .action(updateRule -> {
+                    try (Statement stmt = updateRule.getPlan().getConfig().getConnection().createStatement()) {
+                        stmt.execute("create table migrated(id integer)");
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+        builder.config().setMigrationLock(60000, 100, 10000);
+        builder.sqlRunner(provider).run();
+
+        try (Connection connection = provider.call()) {
+            Assert.assertEquals("1.0.0", new PostgresDao(connection).readCurrentVersion());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.jr.deebee.scripts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class TestChecksumCache {
+
+    @Test
+    public void testCache() throws Exception {
+        Path directory = Files.createTempDirectory("checksums");
+        Path script = directory.resolve("0.0.0_to_1.0.0.sql");
+        Files.write(script, "create table t(id integer);".getBytes(StandardCharsets.UTF_8));
+        Path file = directory.resolve("checksums.properties");
+
+        ChecksumCache cache = new ChecksumCache(file);
+        String checksum = cache.checksum(script);
+        Assert.assertEquals(ScriptIndex.hash(script), checksum);
+        Assert.assertEquals(checksum, cache.checksum(script.toUri().toURL()));
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+        cache.save();
+
+        //a new cache on the same file does not hash the script again
+        cache = new ChecksumCache(file);
+        Assert.assertEquals(checksum, cache.checksum(script));
+        Assert.assertEquals(0, cache.getMisses());
+
+        //a modified script is hashed again
+        Files.write(script, "create table u(id integer);".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(script, FileTime.fromMillis(Files.getLastModifiedTime(script).toMillis() + 2000));
+        Assert.assertNotEquals(checksum, cache.checksum(script));
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testHash() throws Exception {
+        Assert.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                ScriptIndex.hash(new ByteArrayInputStream("abc".getBytes(StandardCharsets.UTF_8))));
+    }
+}
@@ -0,0 +1,128 @@
+package net.jr.deebee.scripts;
+
+import net.jr.deebee.UpdatePlanBuilder;
+import org.h2.Driver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+
+public class TestScriptDiscovery {
+
+    private static Path scripts() throws Exception {
+        Path directory = Files.createTempDirectory("scripts");
+        Files.write(directory.resolve("0.0.0_to_1.0.0.sql"), "create table discovered(id integer);".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("1.0.0_to_1.1.0.sql"), "insert into discovered values(1);".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("readme.txt"), "not a script".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("1.1.0.sql"), "-- bad name".getBytes(StandardCharsets.UTF_8));
+        return directory;
+    }
+
+    private static List<String> names(List<Script> scripts) {
+        return scripts.stream().map(Script::getName).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testDirectory() throws Exception {
+        Path directory = scripts();
+        List<Script> listed = ScriptDiscovery.fromDirectory(directory);
+        Assert.assertEquals("[0.0.0_to_1.0.0.sql, 1.0.0_to_1.1.0.sql]", names(listed).toString());
+
+        List<Script> indexed = ScriptIndex.write(directory);
+        Assert.assertEquals(names(listed), names(indexed));
+        List<Script> scripts = ScriptDiscovery.fromDirectory(directory);
+        Assert.assertEquals(names(listed), names(scripts));
+        Script first = scripts.stream().filter(s -> s.getToVersion().equals("1.0.0")).findFirst().get();
+        Assert.assertEquals(Files.size(directory.resolve(first.getName())), first.getSize());
+        Assert.assertEquals(ScriptIndex.hash(directory.resolve(first.getName())), first.getHash());
+
+        //the index is stale : scripts added since are found, scripts removed since are not
+        Files.write(directory.resolve("1.1.0_to_1.2.0.sql"), "select 1;".getBytes(StandardCharsets.UTF_8));
+        Files.delete(directory.resolve("1.0.0_to_1.1.0.sql"));
+        scripts = ScriptDiscovery.fromDirectory(directory);
+        Assert.assertEquals("[0.0.0_to_1.0.0.sql, 1.1.0_to_1.2.0.sql]", names(scripts).toString());
+        Assert.assertNull(scripts.stream().filter(s -> s.getToVersion().equals("1.2.0")).findFirst().get().getHash());
+    }
+
+    @Test
+    public void testIndexVersionsMustMatchNames() throws Exception {
+        Path directory = scripts();
+        ScriptIndex.write(directory);
+        Path index = directory.resolve(ScriptIndex.FILE_NAME);
+        String content = new String(Files.readAllBytes(index), StandardCharsets.UTF_8);
+        Files.write(index, content.replace("=0.0.0,1.0.0,", "=0.0.0,2.0.0,").getBytes(StandardCharsets.UTF_8));
+        try {
+            ScriptIndex.read(index.toUri().toURL());
+            Assert.fail("the index does not match the name of the script");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("0.0.0_to_1.0.0.sql"));
+        }
+    }
+
+    private static Path jar(Path directory, boolean index) throws Exception {
+        if (index) {
+            ScriptIndex.write(directory);
+        }
+        Path jar = Files.createTempFile("scripts", ".jar");
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar))) {
+            jos.putNextEntry(new JarEntry("db/"));
+            jos.putNextEntry(new JarEntry("db/migrations/"));
+            for (Path path : Files.list(directory).collect(Collectors.toList())) {
+                jos.putNextEntry(new JarEntry("db/migrations/" + path.getFileName()));
+                jos.write(Files.readAllBytes(path));
+                jos.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    @Test
+    public void testJar() throws Exception {
+        Assert.assertEquals(2, ScriptDiscovery.fromJar(jar(scripts(), false), "db/migrations").size());
+        Path jar = jar(scripts(), true);
+        List<Script> scripts = ScriptDiscovery.fromJar(jar, "/db/migrations/");
+        Assert.assertEquals("[0.0.0_to_1.0.0.sql, 1.0.0_to_1.1.0.sql]", names(scripts).toString());
+        Assert.assertNotNull(scripts.get(0).getHash());
+        try (java.io.InputStream is = scripts.get(0).getUrl().openStream()) {
+            Assert.assertTrue(is.read() > 0);
+        }
+    }
+
+    @Test
+    public void testClasspath() throws Exception {
+        DriverManager.registerDriver(new Driver());
+        for (boolean index : new boolean[]{false, true}) {
+            Path jar = jar(scripts(), index);
+            ClassLoader previous = Thread.currentThread().getContextClassLoader();
+            try (URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null)) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+                String url = "jdbc:h2:mem:classpath" + index + ";DB_CLOSE_DELAY=-1";
+                new UpdatePlanBuilder()
+                        .importFromClasspath("db/migrations")
+                        .sqlRunner(DriverManager.getConnection(url))
+                        .run();
+                try (Connection connection = DriverManager.getConnection(url);
+                     Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("select count(*) from discovered")) {
+                    rs.next();
+                    Assert.assertEquals(1, rs.getInt(1));
+                }
+            } finally {
+                Thread.currentThread().setContextClassLoader(previous);
+            }
+        }
+    }
+}
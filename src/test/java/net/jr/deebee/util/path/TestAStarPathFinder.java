@@ -0,0 +1,79 @@
+package net.jr.deebee.util.path;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class TestAStarPathFinder {
+
+    private static class GraphPathFinder extends AStarPathFinder<String> {
+
+        private final Map<String, Map<String, Double>> edges = new TreeMap<>();
+
+        private GraphPathFinder edge(String from, String to, double cost) {
+            edges.computeIfAbsent(from, k -> new TreeMap<>()).put(to, cost);
+            edges.computeIfAbsent(to, k -> new TreeMap<>());
+            return this;
+        }
+
+        @Override
+        public Iterable<String> getNeighbors(String n) {
+            return edges.get(n).keySet();
+        }
+
+        @Override
+        public Iterable<String> getPredecessors(String n) {
+            List<String> predecessors = new ArrayList<>();
+            edges.forEach((from, targets) -> {
+                if (targets.containsKey(n)) {
+                    predecessors.add(from);
+                }
+            });
+            return predecessors;
+        }
+
+        @Override
+        public double distanceBetween(String n1, String n2) {
+            return edges.get(n1).get(n2);
+        }
+    }
+
+    private static GraphPathFinder graph() {
+        return new GraphPathFinder()
+                .edge("a", "b", 1)
+                .edge("b", "c", 1)
+                .edge("c", "d", 1)
+                .edge("d", "e", 1)
+                .edge("a", "x", 10)
+                .edge("x", "e", 10)
+                .edge("b", "y", 0.5)
+                .edge("y", "d", 0.5)
+                .edge("f", "a", 1);
+    }
+
+    @Test
+    public void testShortestPath() {
+        for (AStarPathFinder.Mode mode : AStarPathFinder.Mode.values()) {
+            GraphPathFinder pathFinder = graph();
+            pathFinder.setMode(mode);
+            Assert.assertEquals(mode.name(), Arrays.asList("a", "b", "y", "d", "e"), pathFinder.find("a", "e"));
+            Assert.assertEquals(mode.name(), Arrays.asList("c"), pathFinder.find("c", "c"));
+            Assert.assertEquals(mode.name(), Arrays.asList("a", "b"), pathFinder.find("a", "b"));
+            Assert.assertNull(mode.name(), pathFinder.find("e", "a"));
+        }
+    }
+
+    @Test
+    public void testFewestHopsWithUnitCosts() {
+        GraphPathFinder pathFinder = new GraphPathFinder()
+                .edge("0", "1", 1)
+                .edge("1", "2", 1)
+                .edge("2", "3", 1)
+                .edge("0", "3", 1);
+        for (AStarPathFinder.Mode mode : AStarPathFinder.Mode.values()) {
+            pathFinder.setMode(mode);
+            Assert.assertEquals(mode.name(), Arrays.asList("0", "3"), pathFinder.find("0", "3"));
+        }
+    }
+}
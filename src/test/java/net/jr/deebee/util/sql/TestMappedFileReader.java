@@ -0,0 +1,70 @@
+package net.jr.deebee.util.sql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TestMappedFileReader {
+
+    private static String readAll(Reader reader, int chunk) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[chunk];
+        int r;
+        while ((r = reader.read(buffer, 0, buffer.length)) != -1) {
+            sb.append(buffer, 0, r);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testWindows() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("insert into t values(").append(i).append(", 'été – 日本 😀');\n");
+        }
+        String content = sb.toString();
+        Path file = Files.createTempFile("mapped", ".sql");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        //windows of a few bytes split the multi-byte characters
+        for (int windowSize : new int[]{4, 5, 7, 1024, 1 << 20}) {
+            for (int chunk : new int[]{1, 3, 8192}) {
+                try (Reader reader = new MappedFileReader(file, windowSize)) {
+                    Assert.assertEquals(content, readAll(reader, chunk));
+                }
+            }
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    public void testBomAndEmptyFile() throws Exception {
+        Path file = Files.createTempFile("mapped", ".sql");
+        try (Reader reader = new MappedFileReader(file)) {
+            Assert.assertEquals(-1, reader.read());
+        }
+        Files.write(file, new byte[]{(byte) 0xef, (byte) 0xbb, (byte) 0xbf, 's', 'e', 'l', 'e', 'c', 't', ' ', '1', ';'});
+        try (SqlStatementReader reader = new SqlStatementReader(new MappedFileReader(file, 4))) {
+            Assert.assertEquals("select 1", reader.next());
+            Assert.assertNull(reader.next());
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    public void testInvalidUtf8() throws Exception {
+        Path file = Files.createTempFile("mapped", ".sql");
+        Files.write(file, "select 'café';".getBytes(StandardCharsets.ISO_8859_1));
+        try (Reader reader = new MappedFileReader(file)) {
+            readAll(reader, 64);
+            Assert.fail("latin-1 is not UTF-8");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("at byte 11 of " + file));
+        }
+        Files.delete(file);
+    }
+}
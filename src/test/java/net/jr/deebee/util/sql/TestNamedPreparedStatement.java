@@ -0,0 +1,155 @@
+package net.jr.deebee.util.sql;
+
+import org.h2.Driver;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class TestNamedPreparedStatement {
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        DriverManager.registerDriver(new Driver());
+        connection = DriverManager.getConnection("jdbc:h2:mem:named");
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        NamedPreparedStatement stmt = NamedPreparedStatement.create(connection, " select :a, ':b', 'x:c' as \"y:c\", :a, :d_1 ");
+        Assert.assertEquals("select ?, ':b', 'x:c' as \"y:c\", ?, ?", stmt.getPreparedQuery());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "d_1")), stmt.getParameterNames());
+        stmt.setInt("a", 1).setString("d_1", "x");
+        try (ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            Assert.assertEquals(1, rs.getInt(1));
+            Assert.assertEquals(1, rs.getInt(4));
+            Assert.assertEquals("x", rs.getString(5));
+        }
+        stmt.close();
+    }
+
+    @Test
+    public void testParseCache() throws Exception {
+        NamedPreparedStatement.clearParseCache();
+        String query = "select :value";
+        for (int i = 0; i < 3; i++) {
+            NamedPreparedStatement.create(connection, query).close();
+        }
+        Assert.assertEquals(1, NamedPreparedStatement.getParseCacheMisses());
+        Assert.assertEquals(2, NamedPreparedStatement.getParseCacheHits());
+
+        NamedPreparedStatement.setParseCacheSize(1);
+        NamedPreparedStatement.create(connection, "select :other").close();
+        NamedPreparedStatement.create(connection, query).close();
+        Assert.assertEquals(3, NamedPreparedStatement.getParseCacheMisses());
+        NamedPreparedStatement.setParseCacheSize(256);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        connection.createStatement().execute("create table batch_test(id integer auto_increment primary key, label varchar(32), weight integer)");
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("label", "row" + i);
+            row.put("weight", i);
+            rows.add(row);
+        }
+
+        NamedPreparedStatement stmt = NamedPreparedStatement.create(connection, "insert into batch_test(label, weight) values(:label, :weight)", Statement.RETURN_GENERATED_KEYS);
+        BatchResult result = stmt.executeBatch(rows, 2);
+        Assert.assertArrayEquals(new int[]{1, 1, 1, 1, 1}, result.getUpdateCounts());
+        Assert.assertArrayEquals(new long[]{1, 2, 3, 4, 5}, result.getGeneratedKeys());
+        stmt.close();
+
+        stmt = NamedPreparedStatement.create(connection, "update batch_test set weight = weight * 10 where label = :label");
+        result = stmt.executeBatch(Stream.of("row1", "row3", "missing"), (s, label) -> s.setString("label", label), 10);
+        Assert.assertArrayEquals(new int[]{1, 1, 0}, result.getUpdateCounts());
+        stmt.close();
+
+        try (ResultSet rs = connection.createStatement().executeQuery("select sum(weight) from batch_test")) {
+            rs.next();
+            Assert.assertEquals(0 + 10 + 2 + 30 + 4, rs.getInt(1));
+        }
+    }
+
+    public static class Item {
+
+        private final String label;
+
+        private final Date created;
+
+        public Item(String label, Date created) {
+            this.label = label;
+            this.created = created;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Date getCreated() {
+            return created;
+        }
+    }
+
+    @Test
+    public void testBeanBinder() throws Exception {
+        Date now = new Date();
+        NamedPreparedStatement stmt = NamedPreparedStatement.create(connection, "select :label, :created, :label");
+        BeanBinder.of(Item.class).compile(stmt).bind(stmt, new Item("bean", now));
+        try (ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            Assert.assertEquals("bean", rs.getString(1));
+            Assert.assertEquals(now.getTime(), rs.getTimestamp(2).getTime());
+            Assert.assertEquals("bean", rs.getString(3));
+        }
+        stmt.close();
+    }
+
+    @Test
+    public void testBeanBinderTypedNulls() throws Exception {
+        //like the PostgreSQL driver, rejects the nulls whose type is unknown
+        Connection strict = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class}, (proxy, method, args) -> {
+            Object result = method.invoke(connection, args);
+            if (!(result instanceof PreparedStatement)) {
+                return result;
+            }
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{PreparedStatement.class}, (stmtProxy, stmtMethod, stmtArgs) -> {
+                if (stmtMethod.getName().equals("setObject") && stmtArgs.length == 2 && stmtArgs[1] == null) {
+                    throw new SQLException("could not determine data type of parameter $" + stmtArgs[0]);
+                }
+                try {
+                    return stmtMethod.invoke(result, stmtArgs);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        });
+        NamedPreparedStatement stmt = NamedPreparedStatement.create(strict, "select :label, :created");
+        BeanBinder.of(Item.class).compile(stmt).bind(stmt, new Item(null, null));
+        try (ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            Assert.assertNull(rs.getString(1));
+            Assert.assertNull(rs.getTimestamp(2));
+        }
+        stmt.close();
+        Assert.assertEquals(Types.TIMESTAMP, BeanBinder.sqlType(Date.class));
+        Assert.assertEquals(Types.BIGINT, BeanBinder.sqlType(Long.class));
+    }
+}
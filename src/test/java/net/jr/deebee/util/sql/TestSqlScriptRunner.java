@@ -0,0 +1,114 @@
+package net.jr.deebee.util.sql;
+
+import net.jr.deebee.metrics.InMemoryMetrics;
+import net.jr.deebee.metrics.MetricsRecorder;
+import org.h2.Driver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class TestSqlScriptRunner {
+
+    private static Connection getConnection(String name) throws Exception {
+        DriverManager.registerDriver(new Driver());
+        return DriverManager.getConnection("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+    }
+
+    private static final String SCRIPT = "create table ref(id integer, label varchar(32));\n"
+            + "insert into ref values(1, 'one');\n"
+            + "insert into ref values(2, 'two; or more');\n"
+            + "insert into ref values(3, 'three');\n"
+            + "update ref set label = upper(label);\n"
+            + "select count(*) from ref;\n"
+            + "delete from ref where id = 3;\n";
+
+    private static int count(Connection connection) throws Exception {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("select count(*) from ref")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testWithoutBatch() throws Exception {
+        Connection connection = getConnection("scriptNoBatch");
+        int[] counts = new SqlScriptRunner(connection).run("noBatch", new StringReader(SCRIPT));
+        Assert.assertArrayEquals(new int[]{0, 1, 1, 1, 3, -1, 1}, counts);
+        Assert.assertEquals(2, count(connection));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        Connection connection = getConnection("scriptBatch");
+        int[] counts = new SqlScriptRunner(connection).setBatchSize(2).run("batch", new StringReader(SCRIPT));
+        Assert.assertEquals(7, counts.length);
+        Assert.assertEquals(-1, counts[5]);
+        Assert.assertEquals(2, count(connection));
+    }
+
+    @Test
+    public void testIsDml() {
+        Assert.assertTrue(SqlScriptRunner.isDml("INSERT into t values(1)"));
+        Assert.assertTrue(SqlScriptRunner.isDml("-- comment\n /* other */ update t set a = 1"));
+        Assert.assertFalse(SqlScriptRunner.isDml("create table t(id integer)"));
+        Assert.assertFalse(SqlScriptRunner.isDml("select * from t"));
+        Assert.assertFalse(SqlScriptRunner.isDml("insertion"));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        Connection connection = getConnection("scriptMetrics");
+        InMemoryMetrics metrics = new InMemoryMetrics(3);
+        new SqlScriptRunner(connection).setMetrics(metrics).run("metrics", new StringReader(SCRIPT));
+        Assert.assertEquals(7, metrics.get(MetricsRecorder.STATEMENT, "metrics").getCount());
+        Assert.assertEquals(1 + 1 + 1 + 3 + 1, metrics.get(MetricsRecorder.ROWS, "metrics").getTotal());
+        Assert.assertEquals(1, metrics.get(MetricsRecorder.SCRIPT, "metrics").getCount());
+        Assert.assertEquals(3, metrics.getSlowestStatements().size());
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        Connection connection = getConnection("scriptFile");
+        Path script = Files.createTempFile("script", ".sql");
+        Files.write(script, SCRIPT.getBytes(StandardCharsets.UTF_8));
+        int[] counts = new SqlScriptRunner(connection).run("file", script);
+        Assert.assertEquals(7, counts.length);
+        Assert.assertEquals(2, count(connection));
+        Files.delete(script);
+    }
+
+    @Test
+    public void testInvalidEncoding() throws Exception {
+        Connection connection = getConnection("scriptEncoding");
+        Path directory = Files.createTempDirectory("encoding");
+        Path script = directory.resolve("1.0.0_to_1.1.0.sql");
+        Files.write(script, "create table encoded(label varchar(32));\ninsert into encoded values('café');".getBytes(StandardCharsets.ISO_8859_1));
+        //a jar entry is read through a stream rather than mapped
+        Path jar = directory.resolve("scripts.jar");
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar))) {
+            jos.putNextEntry(new JarEntry(script.getFileName().toString()));
+            jos.write(Files.readAllBytes(script));
+            jos.closeEntry();
+        }
+        for (URL url : new URL[]{script.toUri().toURL(), new URL("jar:" + jar.toUri().toURL() + "!/" + script.getFileName())}) {
+            try (Reader reader = SqlScriptRunner.open(url)) {
+                new SqlScriptRunner(connection).run("1.0.0_to_1.1.0.sql", reader);
+                Assert.fail("the script is not UTF-8");
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getMessage().contains("1.0.0_to_1.1.0.sql"));
+            }
+        }
+    }
+}
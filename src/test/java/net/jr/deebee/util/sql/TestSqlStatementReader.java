@@ -0,0 +1,89 @@
+package net.jr.deebee.util.sql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestSqlStatementReader {
+
+    private static List<String> split(String script, int bufferSize) throws Exception {
+        List<String> statements = new ArrayList<>();
+        try (SqlStatementReader reader = new SqlStatementReader(new StringReader(script), bufferSize)) {
+            String stmt;
+            while ((stmt = reader.next()) != null) {
+                statements.add(stmt);
+            }
+        }
+        return statements;
+    }
+
+    @Test
+    public void testSimpleStatements() throws Exception {
+        List<String> expected = Arrays.asList("create table t(id integer)", "insert into t values(1)", "select * from t");
+        String script = "create table t(id integer);\n insert into t values(1);\n\nselect * from t";
+        for (int bufferSize : new int[]{1, 2, 3, 7, 8192}) {
+            Assert.assertEquals(expected, split(script, bufferSize));
+        }
+    }
+
+    @Test
+    public void testSemicolonsInLiteralsAndComments() throws Exception {
+        String script = "insert into t values('a;b', 'it''s;'); -- comment ; here\n"
+                + "/* block ; /* nested ; */ comment */ update t set \"weird;name\" = 1;"
+                + "create alias f as $$ int f() { return 1; } $$;"
+                + "create function g() returns int as $body$ begin return 1; end; $body$ language plpgsql;"
+                + "select $1;";
+        List<String> expected = Arrays.asList(
+                "insert into t values('a;b', 'it''s;')",
+                "-- comment ; here\n/* block ; /* nested ; */ comment */ update t set \"weird;name\" = 1",
+                "create alias f as $$ int f() { return 1; } $$",
+                "create function g() returns int as $body$ begin return 1; end; $body$ language plpgsql",
+                "select $1");
+        for (int bufferSize : new int[]{1, 4, 8192}) {
+            Assert.assertEquals(expected, split(script, bufferSize));
+        }
+    }
+
+    @Test
+    public void testEmptyStatementsAreSkipped() throws Exception {
+        Assert.assertEquals(Arrays.asList("select 1"), split(";; \n select 1 ;\n -- trailing comment\n;", 8192));
+        Assert.assertEquals(Arrays.asList(), split("  \n/* nothing */", 8192));
+    }
+
+    @Test
+    public void testBackslashEscapes() throws Exception {
+        String script = "insert into t values('it\\'s; here', \"a\\\"; b\", 'c:\\\\'); select `x\\`;";
+        Assert.assertEquals(Arrays.asList("insert into t values('it\\'s", "here');"), split("insert into t values('it\\'s; here');", 8192));
+        for (int bufferSize : new int[]{1, 2, 8192}) {
+            List<String> statements = new ArrayList<>();
+            try (SqlStatementReader reader = new SqlStatementReader(new StringReader(script), bufferSize).setBackslashEscapes(true)) {
+                String stmt;
+                while ((stmt = reader.next()) != null) {
+                    statements.add(stmt);
+                }
+            }
+            Assert.assertEquals(Arrays.asList("insert into t values('it\\'s; here', \"a\\\"; b\", 'c:\\\\')", "select `x\\`"), statements);
+        }
+    }
+
+    @Test
+    public void testNestedComments() throws Exception {
+        //in MySQL or H2, the comment ends at the first closing delimiter
+        Assert.assertEquals(Arrays.asList("/* a /* b */ select 1", "select 2"), split("/* a /* b */ select 1; select 2;", 8192));
+        String script = "/* a /* b; */ c; */ select 1; select 2;";
+        for (int bufferSize : new int[]{1, 2, 8192}) {
+            List<String> statements = new ArrayList<>();
+            try (SqlStatementReader reader = new SqlStatementReader(new StringReader(script), bufferSize).setNestedComments(true)) {
+                String stmt;
+                while ((stmt = reader.next()) != null) {
+                    statements.add(stmt);
+                }
+            }
+            Assert.assertEquals(Arrays.asList("/* a /* b; */ c; */ select 1", "select 2"), statements);
+        }
+    }
+}